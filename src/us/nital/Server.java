@@ -27,6 +27,8 @@ import java.util.logging.Logger;
 import us.nital.bundle.ReplayingActivator;
 import us.nital.world.World;
 import us.nital.net.Network;
+import us.nital.util.logging.AsyncLogHandler;
+import us.nital.util.logging.LogBuffer;
 
 
 /**
@@ -104,6 +106,12 @@ public final class Server extends ReplayingActivator<Server.State> {
 	 * @param args The command line parameters.
 	 */
 	public static void main(String[] args) {
+		/*
+		 * Console output is handed over to the log buffer's consumer
+		 * so that logging never takes place on game or network threads.
+		 */
+		AsyncLogHandler.install();
+
 		logger.info("Initializing Nital...");
 
 		// call for activation
@@ -131,7 +139,7 @@ public final class Server extends ReplayingActivator<Server.State> {
 			checkpoint(State.GAME);
 			break;
 		case GAME:
-			World.getSingleton();
+			World.getSingleton().start();
 			checkpoint(State.FINISHED);
 			break;
 		case FINISHED:
@@ -151,6 +159,16 @@ public final class Server extends ReplayingActivator<Server.State> {
 		 */
 
 		Network.getSingleton().stop();
+
+		/*
+		 * Every player is saved, and pending saves are written out.
+		 */
+		World.getSingleton().shutdown();
+
+		/*
+		 * Write out any buffered log entries before we exit.
+		 */
+		LogBuffer.getSingleton().shutdown(1000);
 		System.exit(0);
 	}
 
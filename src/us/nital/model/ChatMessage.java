@@ -0,0 +1,100 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.model;
+
+import us.nital.util.TextUtils;
+
+/**
+ * A public chat message which a player has sent.
+ * 
+ * <p>The message's text is kept packed just as the client sent it, so that
+ * relaying the message to observing players only copies the packed bytes.
+ * The text is only unpacked should the server need to read it.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class ChatMessage {
+
+	/**
+	 * The colour of the message.
+	 */
+	private final int colour;
+
+	/**
+	 * The effects of the message (for example waving or scrolling).
+	 */
+	private final int effects;
+
+	/**
+	 * The packed text of the message.
+	 */
+	private final byte[] text;
+
+	/**
+	 * Constructs a new chat message.
+	 * @param colour The colour of the message.
+	 * @param effects The effects of the message.
+	 * @param text The packed text of the message. The array is kept
+	 * as it is and must not be modified afterwards.
+	 */
+	public ChatMessage(int colour, int effects, byte[] text) {
+		this.colour = colour;
+		this.effects = effects;
+		this.text = text;
+	}
+
+	/**
+	 * Gets the message's {@link #colour}.
+	 * @return The colour of the message.
+	 */
+	public int getColour() {
+		return colour;
+	}
+
+	/**
+	 * Gets the message's {@link #effects}.
+	 * @return The effects of the message.
+	 */
+	public int getEffects() {
+		return effects;
+	}
+
+	/**
+	 * Gets the message's packed {@link #text}. The array is shared by
+	 * every relay of the message and must not be modified.
+	 * @return The packed text of the message.
+	 */
+	public byte[] getPackedText() {
+		return text;
+	}
+
+	/**
+	 * Unpacks the message's text.
+	 * @return The text, capitalized the way the client displays it.
+	 */
+	public String unpackText() {
+		char[] chars = new char[text.length * 2];
+		int length = TextUtils.unpack(text, 0, text.length, chars);
+		TextUtils.capitalize(chars, length);
+		return new String(chars, 0, length);
+	}
+
+}
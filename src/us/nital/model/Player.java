@@ -20,6 +20,16 @@
 
 package us.nital.model;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import us.nital.net.Session;
 import us.nital.net.io.InBuffer;
 import us.nital.net.io.OutBuffer;
@@ -27,6 +37,9 @@ import us.nital.net.packet.PacketSender;
 import us.nital.util.EntityList;
 import us.nital.util.PrimitiveUtils;
 import us.nital.world.Saveable;
+import us.nital.world.save.SaveFormat;
+import us.nital.world.save.SaveReader;
+import us.nital.world.save.SaveWriter;
 
 /**
  * Each instantation of a player serves to represent
@@ -127,6 +140,50 @@ public class Player extends Mob implements Saveable {
 
 	}
 
+	/**
+	 * The save section which holds the player's username and password.
+	 */
+	private static final int SECTION_CREDENTIALS = 1;
+
+	/**
+	 * The save section which holds the player's {@link #right}.
+	 */
+	private static final int SECTION_RIGHT = 2;
+
+	/**
+	 * The save section which holds the player's flags, such as
+	 * their {@link #flagged} status.
+	 */
+	private static final int SECTION_FLAGS = 3;
+
+	/**
+	 * The tags of the save sections which the player reads.
+	 */
+	private static final Set<Integer> KNOWN_SECTIONS = new HashSet<Integer>(
+			Arrays.asList(SECTION_CREDENTIALS, SECTION_RIGHT, SECTION_FLAGS));
+
+	/**
+	 * The sections of the player's save which were not read, as they were
+	 * written by a newer version. These are written back upon saving.
+	 */
+	private Map<Integer, ChannelBuffer> unknownSections = Collections.emptyMap();
+
+	/**
+	 * The dirty flag of the player's {@link #flagged} status.
+	 */
+	public static final int DIRTY_FLAGGED = 1;
+
+	/**
+	 * The dirty flag of the player's {@link #right}.
+	 */
+	public static final int DIRTY_RIGHT = 1 << 1;
+
+	/**
+	 * The dirty flags of the player's saved fields which have changed
+	 * since they were last saved.
+	 */
+	private final AtomicInteger dirty = new AtomicInteger();
+
 	/**
 	 * If this flag is appended as <code>true</code>, the player is
 	 * flagged. When a player is flagged the client will be configured
@@ -160,6 +217,7 @@ public class Player extends Mob implements Saveable {
 	 */
 	public void setFlagged(boolean flagged) {
 		this.flagged = flagged;
+		markDirty(DIRTY_FLAGGED);
 	}
 
 	/**
@@ -184,6 +242,32 @@ public class Player extends Mob implements Saveable {
 	 */
 	public void setRight(Right right) {
 		this.right = right;
+		markDirty(DIRTY_RIGHT);
+	}
+
+	/**
+	 * The chat message which the player sent during the current tick, or
+	 * <code>null</code>. The message's packed text is relayed to observing
+	 * players as it is.
+	 */
+	private ChatMessage chatMessage;
+
+	/**
+	 * Gets the player's {@link #chatMessage}.
+	 * @return The chat message which the player sent during the current
+	 * tick, or <code>null</code>.
+	 */
+	public ChatMessage getChatMessage() {
+		return chatMessage;
+	}
+
+	/**
+	 * Sets the player's {@link #chatMessage}.
+	 * @param chatMessage The chat message which the player sent during
+	 * the current tick, or <code>null</code> once it has been relayed.
+	 */
+	public void setChatMessage(ChatMessage chatMessage) {
+		this.chatMessage = chatMessage;
 	}
 
 	/**
@@ -231,14 +315,45 @@ public class Player extends Mob implements Saveable {
 		this.session = session;
 	}
 
+	@Override
+	public boolean isDirty() {
+		return dirty.get() != 0;
+	}
+
+	@Override
+	public void markDirty(int flags) {
+		int current;
+		do {
+			current = dirty.get();
+		} while (!dirty.compareAndSet(current, current | flags));
+	}
+
+	@Override
+	public int clean() {
+		return dirty.getAndSet(0);
+	}
+
 	@Override
 	public void save(OutBuffer buf) {
-		buf.writeString(session.getUsername());
-		buf.writeString(session.getPassword());
+		SaveWriter writer = new SaveWriter(buf);
+
+		writer.write(SECTION_CREDENTIALS, writer.section()
+				.writeString(session.getUsername())
+				.writeString(session.getPassword()));
+
+		writer.write(SECTION_RIGHT, writer.section().writeSignedVarInt(right.getCrown()));
 
-		buf.writeShort(right.getCrown());
+		writer.write(SECTION_FLAGS, writer.section().writeVarInt(PrimitiveUtils.toInteger(isFlagged())));
 
-		buf.write(PrimitiveUtils.toInteger(isFlagged()));
+		/*
+		 * Sections which this version does not know of are written back
+		 * as they were read, so that they are not lost.
+		 */
+		for (Map.Entry<Integer, ChannelBuffer> section : unknownSections.entrySet()) {
+			writer.write(section.getKey(), section.getValue());
+		}
+
+		writer.finish();
 	}
 
 	@Override
@@ -246,12 +361,13 @@ public class Player extends Mob implements Saveable {
 		/*
 		 * Before adding to this method, read:
 		 * 
-		 * 		When loading from the buffer it is best practice to
-		 * 		check if the data which is expected to be read from
-		 * 		the buffer exists before reading takes place. This way,
-		 * 		players who do not have the data present in their current
-		 * 		file save still maintain the other data, while the new
-		 * 		data will be written when they are saved.
+		 * 		Each piece of saved data belongs to a section with a
+		 * 		tag of it's own. When loading, check that the section
+		 * 		exists before reading it. This way, players who do not
+		 * 		have the section present in their current save still
+		 * 		maintain the other data, while the new section will be
+		 * 		written when they are saved. Large sections should be a
+		 * 		LazySection, so they are only decoded once they are used.
 		 */
 
 
@@ -263,6 +379,56 @@ public class Player extends Mob implements Saveable {
 			return;
 		}
 
+		/*
+		 * Saves which were written before sections existed are
+		 * read as they were written.
+		 */
+		if (!SaveFormat.isTagged(buf.getInternalBuffer())) {
+			loadLegacy(buf);
+			return;
+		}
+
+		SaveReader reader = new SaveReader(buf.getInternalBuffer());
+
+		InBuffer section = reader.getSection(SECTION_CREDENTIALS);
+		if (section != null) {
+			session = new Session(
+					section.readString(), // username
+					section.readString(), // password
+					session.getChannel());
+		}
+
+		section = reader.getSection(SECTION_RIGHT);
+		if (section != null) {
+			/*
+			 * This sets the player's right level.
+			 */
+			this.right = Right.forId(section.readSignedVarInt());
+		}
+
+		section = reader.getSection(SECTION_FLAGS);
+		if (section != null) {
+			/*
+			 * This sets whether or not the player is flagged.
+			 */
+			this.flagged = (section.readVarInt() & 1) != 0;
+		}
+
+		/*
+		 * Any other sections were written by a newer version, and are
+		 * kept to be written back.
+		 */
+		Map<Integer, ChannelBuffer> unknown = new LinkedHashMap<Integer, ChannelBuffer>(reader.getSections());
+		unknown.keySet().removeAll(KNOWN_SECTIONS);
+		this.unknownSections = unknown;
+	}
+
+	/**
+	 * Loads a save which was written before sections existed, in which
+	 * the player's data is written one after another.
+	 * @param buf The buffer which reads the save.
+	 */
+	private void loadLegacy(InBuffer buf) {
 		session = new Session(
 				buf.readString(), // username
 				buf.readString(), // password
@@ -281,4 +447,4 @@ public class Player extends Mob implements Saveable {
 			this.flagged = buf.readByte() == 1;
 	}
 
-}
\ No newline at end of file
+}
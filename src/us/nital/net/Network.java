@@ -22,24 +22,35 @@ package us.nital.net;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
 import us.nital.bundle.ReplayingActivator;
+import us.nital.model.Player;
 import us.nital.net.codec.Encoder;
 import us.nital.net.codec.FrontDecoder;
+import us.nital.net.io.InBuffer;
+import us.nital.net.message.Message;
+import us.nital.net.message.MessageDispenser;
+import us.nital.net.packet.PacketDispenser;
+import us.nital.world.World;
 
 /**
  * Activates networking componenets.
@@ -70,6 +81,42 @@ public final class Network extends ReplayingActivator<Network.State> {
 		return SingletonContainer.INSTANCE;
 	}
 
+	/**
+	 * The number of network worker threads, which is used both for the
+	 * I/O workers and for the threads which encode outgoing messages.
+	 */
+	private static final int WORKERS = Runtime.getRuntime().availableProcessors() * 2;
+
+	/**
+	 * Encodes outgoing messages, so that threads which send messages
+	 * do not have to encode them. Netty encodes upon the thread which
+	 * writes to a channel, so writes are handed to these threads.
+	 */
+	private final ExecutorService encoderExecutor = Executors.newFixedThreadPool(WORKERS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Encoder-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Gets the network's {@link #encoderExecutor}.
+	 * @return The executor which encodes outgoing messages.
+	 */
+	public Executor getEncoderExecutor() {
+		return encoderExecutor;
+	}
+
+	/**
+	 * Associates connection channels with the player who
+	 * logged in through them.
+	 */
+	public static final ChannelLocal<Player> PLAYERS = new ChannelLocal<Player>();
+
 	/**
 	 * Handles channel events.
 	 */
@@ -80,6 +127,29 @@ public final class Network extends ReplayingActivator<Network.State> {
 			logger.info("Exception caught: " + e);
 		}
 
+		@Override
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+			Object message = e.getMessage();
+
+			if (message instanceof Message) {
+				/*
+				 * Decoded messages are dispensed to their handler along
+				 * with the player who logged in through the channel.
+				 */
+				Player player = PLAYERS.get(ctx.getChannel());
+				if (player == null) {
+					((Message) message).recycle();
+					return;
+				}
+				MessageDispenser.getSingleton().handle(player, (Message) message);
+			} else if (message instanceof InBuffer) {
+				/*
+				 * Packets without a message decoder are dispensed as they are.
+				 */
+				PacketDispenser.getSingleton().handle((InBuffer) message);
+			}
+		}
+
 		@Override
 		public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
 			logger.info("Received connection from: " + 
@@ -90,6 +160,15 @@ public final class Network extends ReplayingActivator<Network.State> {
 		public void channelDisconnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
 			logger.info("Disconnected connection: " + 
 					((InetSocketAddress) ctx.getChannel().getRemoteAddress()).getHostName());
+
+			/*
+			 * The player who logged in through the channel leaves the world,
+			 * unless they reconnect soon.
+			 */
+			Player player = PLAYERS.remove(ctx.getChannel());
+			if (player != null) {
+				World.getSingleton().disconnect(player, ctx.getChannel());
+			}
 		}
 
 	};
@@ -103,13 +182,15 @@ public final class Network extends ReplayingActivator<Network.State> {
 		public ChannelPipeline getPipeline() {
 			ChannelPipeline pipeline = Channels.pipeline();
 
-			pipeline.addLast("handler", channelHandler);
-
-			// This decoder will be later switched over to:
-			// 					com.nital.net.codec.Decoder
 			pipeline.addLast("encoder", new Encoder());
+
+			// This decoder is switched over to us.nital.net.codec.Decoder
+			// once the login has been completed.
 			pipeline.addLast("decoder", new FrontDecoder());
 
+			// The handler comes last so that it receives decoded messages.
+			pipeline.addLast("handler", channelHandler);
+
 			return pipeline;
 		}
 
@@ -164,7 +245,7 @@ public final class Network extends ReplayingActivator<Network.State> {
 		default:
 		case INITIALIZATION:
 			Executor pool = Executors.newCachedThreadPool();
-			factory = new NioServerSocketChannelFactory(pool, pool);
+			factory = new NioServerSocketChannelFactory(pool, pool, WORKERS);
 			checkpoint(State.BOOTSTRAP_CONFIGURATION);
 			break;
 		case BOOTSTRAP_CONFIGURATION:
@@ -22,6 +22,8 @@ package us.nital.net;
 
 import org.jboss.netty.channel.Channel;
 
+import us.nital.util.NameUtils;
+
 /**
  * Represents a connection session between the server and
  * a user client by encapsulating data which is related to
@@ -44,6 +46,21 @@ public class Session {
 		return username;
 	}
 
+	/**
+	 * The session's username encoded as a base-37 <code>long</code>.
+	 */
+	private final long encodedUsername;
+
+	/**
+	 * Gets the session's {@link #encodedUsername}.
+	 * @return The session's username encoded as a base-37 <code>long</code>,
+	 * which identifies the user regardless of the username's case.
+	 * @see {@link NameUtils#nameToLong}
+	 */
+	public long getEncodedUsername() {
+		return encodedUsername;
+	}
+
 	/**
 	 * The session's password which the user connected with.
 	 */
@@ -59,9 +76,10 @@ public class Session {
 
 	/**
 	 * The connection channel which holds the stream towards
-	 * the server and user client.
+	 * the server and user client. It is replaced should the user
+	 * reconnect.
 	 */
-	private Channel channel;
+	private volatile Channel channel;
 
 	/**
 	 * Gets the session's {@link #channel}.
@@ -72,6 +90,15 @@ public class Session {
 		return channel;
 	}
 
+	/**
+	 * Sets the session's {@link #channel}, which attaches the session
+	 * to a new connection after the user reconnected.
+	 * @param channel The new connection channel.
+	 */
+	public void setChannel(Channel channel) {
+		this.channel = channel;
+	}
+
 	/**
 	 * Constructs a new session.
 	 * @param username The session's connection username.
@@ -81,6 +108,7 @@ public class Session {
 	 */
 	public Session(String username, String password, Channel channel) {
 		this.username = username;
+		this.encodedUsername = NameUtils.nameToLong(username);
 		this.password = password;
 		this.channel = channel;
 	}
@@ -26,13 +26,20 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
 import us.nital.Constants;
+import us.nital.net.io.InBuffer;
+import us.nital.net.message.Message;
+import us.nital.net.message.MessageDispenser;
 import us.nital.net.packet.*;
 
 /**
- * Decodes an incoming message into a {@link Packet}. The decoded object
- * is then sent to a {@link PacketDispenser} to be dispensed to it's
+ * Decodes an incoming message into a {@link Message}, should the operation
+ * code have a decoder registered with the {@link MessageDispenser}. This
+ * is done on the network thread, so that handlers only receive plain data.
+ * 
+ * <p>Otherwise the message is decoded into an {@link InBuffer}, which
+ * is sent to a {@link PacketDispenser} to be dispensed to it's
  * appropriate {@link PacketHandler} via the channel handler associated
- * with the pipeline.
+ * with the pipeline.</p>
  * 
  * @author Thomas Nappo
  */
@@ -48,6 +55,12 @@ public class Decoder extends FrameDecoder {
 			return null;
 		}
 
+		/*
+		 * Should the whole packet not have arrived yet, the reader
+		 * index is reset back here so that it is decoded again later.
+		 */
+		buffer.markReaderIndex();
+
 		/*
 		 * The is the operation code which identifies the
 		 * appropriate packet size and handler.
@@ -61,12 +74,15 @@ public class Decoder extends FrameDecoder {
 		int size = Constants.PACKET_SIZES[opCode];
 
 		/*
-		 * If the size is unspecified by the size array we set
-		 * it equal to the number of readable bytes left in the
-		 * buffer.
+		 * If the size is unspecified by the size array, the
+		 * size is the next unsigned byte in the buffer.
 		 */
 		if (size < 0) {
-			size = buffer.readableBytes();
+			if (!buffer.readable()) {
+				buffer.resetReaderIndex();
+				return null;
+			}
+			size = buffer.readUnsignedByte();
 		}
 
 		/*
@@ -74,19 +90,24 @@ public class Decoder extends FrameDecoder {
 		 * expected packet size we cannot continue decoding.
 		 */
 		if (buffer.readableBytes() < size) {
+			buffer.resetReaderIndex();
 			return null;
 		}
 
 		/*
-		 * We construct the packet object using the buffer and the
-		 * operation code.
+		 * Packets with a decoder are decoded right away, so their payload
+		 * can be a slice of the buffer rather than a copy.
 		 */
-		Packet packet = new Packet(opCode, buffer);
+		MessageDispenser dispenser = MessageDispenser.getSingleton();
+		if (dispenser.isDecodable(opCode)) {
+			return dispenser.decode(new InBuffer(opCode, buffer.readSlice(size)));
+		}
 
 		/*
-		 * Return back the encoded packet object.
+		 * Otherwise we construct the packet object using a copy of the
+		 * payload and the operation code.
 		 */
-		return packet;
+		return new InBuffer(opCode, buffer.readBytes(size));
 	}
 
-}
\ No newline at end of file
+}
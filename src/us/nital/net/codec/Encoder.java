@@ -29,30 +29,85 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
 import us.nital.net.io.OutBuffer;
+import us.nital.net.message.Message;
+import us.nital.net.message.MessageEncoder;
+import us.nital.net.message.encoders.*;
 
 /**
  * Encodes outgoing {@link OutBuffer}s to be delivered towards a connected channel
  * by encoding them into a channel buffer which is used by the Netty implementation.
  * 
+ * <p>Outgoing {@link Message}s are first encoded into an <tt>OutBuffer</tt> by
+ * the {@link MessageEncoder} of their operation code. This takes place on the
+ * network thread which writes them, rather than on the thread which sent them.</p>
+ * 
  * @author Thomas Nappo
  * @see {@link OneToOneEncoder}
  */
 public class Encoder extends OneToOneEncoder {
 
+	/**
+	 * A fixed array of message encoders which is indexed by operation code.
+	 */
+	/*
+	 * This array is of length 256 because packet operation codes range
+	 * from 0-255 as they are written/read as an unsigned byte.
+	 */
+	private static final MessageEncoder<?>[] encoders = new MessageEncoder<?>[256];
+
+	/*
+	 * The internal components within the brackets should be used
+	 * to register the message encoders of operation codes.
+	 */
+	static {
+		encoders[253] = new ServerMessageEncoder();
+	}
+
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
 		/*
-		 * The encoder only can encode instances of OutBuffer.
+		 * Channel buffers have already been encoded (for example a
+		 * broadcast which was encoded once for many channels), so
+		 * they are passed on as they are.
 		 */
-		if (!(msg instanceof OutBuffer)) {
-			throw new UnsupportedEncodingException();
+		if (msg instanceof ChannelBuffer) {
+			return msg;
+		}
+
+		/*
+		 * Messages are encoded into an OutBuffer by their encoder, and
+		 * are then recycled as they are no longer needed.
+		 */
+		if (msg instanceof Message) {
+			Message message = (Message) msg;
+			MessageEncoder<?> encoder = encoders[message.getOpCode()];
+			if (encoder == null) {
+				throw new UnsupportedEncodingException("No encoder for operation code " + message.getOpCode());
+			}
+			try {
+				msg = encode(encoder, message);
+			} finally {
+				message.recycle();
+			}
 		}
 
 		/*
-		 * We convert the message to an OutBuffer object. 
+		 * Otherwise the encoder only can encode instances of OutBuffer.
 		 */
-		OutBuffer out = (OutBuffer) msg;
+		if (!(msg instanceof OutBuffer)) {
+			throw new UnsupportedEncodingException();
+		}
 
+		return encode((OutBuffer) msg);
+	}
+
+	/**
+	 * Encodes an {@link OutBuffer} into a channel buffer which can be
+	 * written to any number of channels.
+	 * @param out The packet to encode.
+	 * @return The encoded channel buffer.
+	 */
+	public static ChannelBuffer encode(OutBuffer out) {
 		/*
 		 * If the buffer is raw we've finished the job and return
 		 * a wrapped buffer using the message's data as the wrapping array.
@@ -138,4 +193,16 @@ public class Encoder extends OneToOneEncoder {
 		return buffer;
 	}
 
+	/**
+	 * Encodes a message using an encoder.
+	 * @param encoder The encoder of the message's operation code.
+	 * @param message The message, which is of the encoder's type as
+	 * encoders are registered by the operation code of their messages.
+	 * @return The packet which the message was encoded into.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <M extends Message> OutBuffer encode(MessageEncoder<M> encoder, Message message) {
+		return encoder.encode((M) message);
+	}
+
 }
\ No newline at end of file
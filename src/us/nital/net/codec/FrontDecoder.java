@@ -25,15 +25,17 @@ import java.util.logging.Logger;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.UpstreamMessageEvent;
 import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
 
 import us.nital.model.Player;
+import us.nital.net.Network;
 import us.nital.net.Session;
-import us.nital.net.io.OutBuffer;
+import us.nital.net.packet.PacketTemplates;
 import us.nital.util.BufferUtils;
 import us.nital.util.NameUtils;
-import us.nital.util.PrimitiveUtils;
 import us.nital.world.Result;
 import us.nital.world.ReturnCodes;
 import us.nital.world.World;
@@ -115,13 +117,6 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 		checkpoint(State.REQUEST);
 	}
 
-	/**
-	 * The client receives this response to get ready for an update.
-	 */
-	private static final byte[] INITIAL_RESPONSE = {
-		0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0
-	};
-
 	/**
 	 * This singleton instance is used to generate random numbers
 	 * during the decoding process.
@@ -142,7 +137,7 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 	private long serverKey;
 
 	@Override
-	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, State state) {
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, State state) throws Exception {
 		switch (state) {
 		default:
 		case REQUEST:
@@ -189,27 +184,10 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 			int nameHash = buffer.readUnsignedByte();
 
 			/*
-			 * To the channel we write a response.
+			 * To the channel we write a response, which is the pre-encoded
+			 * handshake patched with a randomly generated server key.
 			 */
-			channel.write(new OutBuffer()
-					/*
-					 * These are the initial login response
-					 * keys which we write to the buffer.
-					 */
-					.write(INITIAL_RESPONSE)
-					/*
-					 * This is a notification key which might
-					 * be there for some authentication, but as
-					 * far as the client shows, this is used to
-					 * separate the randomly generated server key
-					 * from the initiial response buffers.
-					 */
-					.write(0)
-					/*
-					 * We generate a random long using the SecureRandom
-					 * constant and set it to the field serverKey
-					 */
-					.writeLong(serverKey = RANDOM.nextLong()));
+			channel.write(PacketTemplates.handshake(serverKey = RANDOM.nextLong()));
 
 			/*
 			 * We checkpoint the GAME state.
@@ -378,6 +356,15 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 				@SuppressWarnings("unused")
 				int uid = buffer.readInt();
 
+				/*
+				 * The username is validated upon the raw bytes before it is read,
+				 * as it is later used to name the user's game file.
+				 */
+				if (!NameUtils.isValidName(buffer, buffer.readerIndex(), buffer.bytesBefore((byte) 10))) {
+					channel.close();
+					return false;
+				}
+
 				/*
 				 * This is the request's username. We read it from the buffer
 				 * using some utilities to format the name as well.
@@ -402,9 +389,12 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 				
 				/*
 				 * And register that new instance to the world, which returns
-				 * back our needed result.
+				 * back our needed result. Reconnections are attached to the
+				 * player who is still within the world instead.
 				 */
-				Result result = World.getSingleton().register(session);
+				Result result = loginOpCode == 18
+						? World.getSingleton().reconnect(session)
+						: World.getSingleton().register(session);
 				
 				/*
 				 * Inside this block contains command to execute when the player
@@ -413,18 +403,18 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 				if (result != null) {
 
 					/*
-					 * And grab the result's return code attachment to write out.
-					 * This code tells the client what messages to display in a failed
-					 * login attempt.
+					 * And grab the result's return code attachment. This code tells
+					 * the client what messages to display in a failed login attempt.
 					 */
-					buffer.writeByte(result.<Integer>getAttachment("returnCode"));
+					int returnCode = result.<Integer>getAttachment("returnCode");
 
 					/*
-					 * If the result's return code attachment was not the success code
-					 * we end the connection.
+					 * If the result's return code attachment was not a success code
+					 * we write it out and end the connection.
 					 */
-					if (result.<Integer>getAttachment("returnCode") != ReturnCodes.SUCCESS) {
-						channel.close();
+					if (returnCode != ReturnCodes.SUCCESS && returnCode != ReturnCodes.RECONNECTED) {
+						channel.write(PacketTemplates.loginResponse(returnCode))
+								.addListener(ChannelFutureListener.CLOSE);
 						return false;
 					}
 					
@@ -433,24 +423,31 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 					 * serves to represent the player model in the world.
 					 */
 					Player player = result.<Player>getAttachment("player");
-					
-					/*/////////////////////////////////////////////////////////////////////
-					
-					 * We now write out flags which were attached to the result which     *
-					 * configure the client to perform certain actions while the user     *
-					 * is playing.                                                        *
-					
-					/////////////////////////////////////////////////////////////////////*/
-					
+
+					/*
+					 * The player is associated with the channel, so that they can be
+					 * unregistered once the channel is disconnected.
+					 */
+					Network.PLAYERS.set(channel, player);
+
 					/*
-					 * And now we write the player's right level crown towards the buffer.
+					 * A reconnected player's client still holds the game as it
+					 * was, so it is only told that the reconnection succeeded.
 					 */
-					buffer.writeByte(player.getRight().getCrown());
+					if (returnCode == ReturnCodes.RECONNECTED) {
+						channel.write(PacketTemplates.loginResponse(returnCode));
+						swapDecoder(ctx, channel, buffer);
+						return true;
+					}
 					
 					/*
-					 * After whether or not they are flagged for botting will be written.
+					 * We now write out the return code along with flags which configure
+					 * the client to perform certain actions while the user is playing:
+					 * the player's right level crown and whether or not they are flagged
+					 * for botting.
 					 */
-					buffer.writeByte(PrimitiveUtils.toInteger(player.isFlagged()));
+					channel.write(PacketTemplates.loginResponse(returnCode,
+							player.getRight().getCrown(), player.isFlagged()));
 					
 					/*
 					 * Finally the login packet (which is actually a bundle of other packets
@@ -458,6 +455,11 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 					 */
 					player.getPacketSender().initialize();
 
+					/*
+					 * The login is complete, so the game decoder takes over.
+					 */
+					swapDecoder(ctx, channel, buffer);
+
 					/*
 					 * With all said and done we return back true because of all
 					 * the writing and reading we've done.
@@ -473,4 +475,28 @@ public class FrontDecoder extends ReplayingDecoder<FrontDecoder.State> {
 		}
 	}
 
+	/**
+	 * Replaces this decoder with a {@link Decoder} in the pipeline. Any bytes
+	 * which arrived after the login request are passed on to the new decoder.
+	 * @param ctx The context of this decoder.
+	 * @param channel The connection channel.
+	 * @param buffer The buffer being decoded.
+	 * @throws Exception should the new decoder fail to decode the bytes.
+	 */
+	private void swapDecoder(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		/*
+		 * The remaining bytes are read out, as otherwise this decoder would
+		 * keep decoding them after it has been removed from the pipeline.
+		 */
+		ChannelBuffer remaining = buffer.readBytes(actualReadableBytes());
+
+		Decoder decoder = new Decoder();
+		ctx.getPipeline().replace(this, "decoder", decoder);
+
+		if (remaining.readable()) {
+			decoder.messageReceived(ctx.getPipeline().getContext(decoder),
+					new UpstreamMessageEvent(channel, remaining, channel.getRemoteAddress()));
+		}
+	}
+
 }
\ No newline at end of file
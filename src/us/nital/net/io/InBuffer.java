@@ -24,6 +24,7 @@ import org.jboss.netty.buffer.ChannelBuffer;
 
 import us.nital.net.packet.Packet;
 import us.nital.util.BufferUtils;
+import us.nital.util.StringCache;
 
 /**
  * An object which acts as a reading buffer. The network
@@ -49,6 +50,16 @@ public class InBuffer extends Packet {
 		super(opCode);
 	}
 
+	/**
+	 * Constructs a new fixed input buffer.
+	 * @param opCode The operation code which is used 
+	 * to associate the data piece with it's handler.
+	 * @param buf A specific payload buffer to use as the internal buffer.
+	 */
+	public InBuffer(int opCode, ChannelBuffer buf) {
+		super(opCode, buf);
+	}
+
 	/**
 	 * Constructs a new fixed raw input buffer.
 	 * @param buf A specific payload buffer to use as the internal buffer.
@@ -89,28 +100,172 @@ public class InBuffer extends Packet {
 		return buf.readUnsignedShort();
 	}
 
+	/**
+	 * Reads one <code>byte</code> special <tt>A</tt> from the buffer.
+	 * @return The next byte in the buffer <code>- 128</code>.
+	 */
+	public byte readByteA() {
+		return (byte) (buf.readByte() - 128);
+	}
+
+	/**
+	 * Reads one <code>byte</code> special <tt>C</tt> from the buffer.
+	 * @return The next byte in the buffer negated.
+	 */
+	public byte readByteC() {
+		return (byte) - buf.readByte();
+	}
+
+	/**
+	 * Reads one <code>byte</code> special <tt>S</tt> from the buffer.
+	 * @return <code>128 -</code> the next byte in the buffer.
+	 */
+	public byte readByteS() {
+		return (byte) (128 - buf.readByte());
+	}
+
+	/**
+	 * Reads and then unsigns one <code>byte</code> special <tt>A</tt> from the buffer.
+	 * @return The next unsigned byte in the buffer <code>- 128</code>.
+	 */
+	public int readUnsignedByteA() {
+		return (buf.readByte() - 128) & 0xFF;
+	}
+
+	/**
+	 * Reads and then unsigns one <code>byte</code> special <tt>C</tt> from the buffer.
+	 * @return The next unsigned byte in the buffer negated.
+	 */
+	public int readUnsignedByteC() {
+		return - buf.readByte() & 0xFF;
+	}
+
+	/**
+	 * Reads and then unsigns one <code>byte</code> special <tt>S</tt> from the buffer.
+	 * @return <code>128 -</code> the next unsigned byte in the buffer.
+	 */
+	public int readUnsignedByteS() {
+		return (128 - buf.readByte()) & 0xFF;
+	}
+
 	/**
 	 * Reads one <code>short</code> special <tt>A</tt> from the buffer.
-	 * @return The next short value in the buffer <code>- 128</code>
+	 * @return The next short in the buffer, with <tt>128</tt>
+	 * subtracted from it's low byte.
 	 */
 	public int readShortA() {
-		return buf.readShort() - 128;
+		return (short) Transforms.a(buf.readShort());
 	}
 
 	/**
 	 * Reads one <code>short</code> special <tt>C</tt> from the buffer.
-	 * @return The next short value in the buffer inverted.
+	 * @return The next short in the buffer, with it's low byte negated.
 	 */
 	public int readShortC() {
-		return - buf.readShort();
+		return (short) Transforms.c(buf.readShort());
 	}
 
 	/**
 	 * Reads one <code>short</code> special <tt>S</tt> from the buffer.
-	 * @return <code>128 -</code> the next short value in the buffer.
+	 * @return The next short in the buffer, with it's low
+	 * byte subtracted from <tt>128</tt>.
 	 */
 	public int readShortS() {
-		return 128 - buf.readShort();
+		return (short) Transforms.s(buf.readShort());
+	}
+
+	/**
+	 * Reads and then unsigns one <code>short</code> special <tt>A</tt> from the buffer.
+	 * @return The next unsigned short in the buffer, with <tt>128</tt>
+	 * subtracted from it's low byte.
+	 */
+	public int readUnsignedShortA() {
+		return Transforms.a(buf.readUnsignedShort());
+	}
+
+	/**
+	 * Reads one little endian <code>short</code> from the buffer.
+	 * @return The next little endian short in the buffer.
+	 */
+	public int readShortLE() {
+		return (short) Transforms.reverseShort(buf.readUnsignedShort());
+	}
+
+	/**
+	 * Reads one little endian <code>short</code> special <tt>A</tt> from the buffer.
+	 * @return The next little endian short in the buffer, with <tt>128</tt>
+	 * subtracted from it's low byte.
+	 */
+	public int readShortLEA() {
+		return (short) Transforms.a(Transforms.reverseShort(buf.readUnsignedShort()));
+	}
+
+	/**
+	 * Reads and then unsigns one little endian <code>short</code> from the buffer.
+	 * @return The next unsigned little endian short in the buffer.
+	 */
+	public int readUnsignedShortLE() {
+		return Transforms.reverseShort(buf.readUnsignedShort());
+	}
+
+	/**
+	 * Reads and then unsigns one little endian <code>short</code> special
+	 * <tt>A</tt> from the buffer.
+	 * @return The next unsigned little endian short in the buffer, with
+	 * <tt>128</tt> subtracted from it's low byte.
+	 */
+	public int readUnsignedShortLEA() {
+		return Transforms.a(Transforms.reverseShort(buf.readUnsignedShort()));
+	}
+
+	/**
+	 * Reads one medium, which is three <code>byte</code>s, from the buffer.
+	 * @return The next medium in the buffer.
+	 */
+	public int readMedium() {
+		return buf.readMedium();
+	}
+
+	/**
+	 * Reads and then unsigns one medium from the buffer.
+	 * @return The next unsigned medium in the buffer.
+	 */
+	public int readUnsignedMedium() {
+		return buf.readUnsignedMedium();
+	}
+
+	/**
+	 * Reads one little endian medium from the buffer.
+	 * @return The next little endian medium in the buffer.
+	 */
+	public int readMediumLE() {
+		return Transforms.signMedium(Transforms.reverseMedium(buf.readUnsignedMedium()));
+	}
+
+	/**
+	 * Reads one medium special <tt>A</tt> from the buffer.
+	 * @return The next medium in the buffer, with <tt>128</tt>
+	 * subtracted from it's low byte.
+	 */
+	public int readMediumA() {
+		return Transforms.signMedium(Transforms.a(buf.readUnsignedMedium()));
+	}
+
+	/**
+	 * Reads one medium special <tt>C</tt> from the buffer.
+	 * @return The next medium in the buffer, with it's low byte negated.
+	 */
+	public int readMediumC() {
+		return Transforms.signMedium(Transforms.c(buf.readUnsignedMedium()));
+	}
+
+	/**
+	 * Reads one medium special <tt>S</tt> from the buffer.
+	 * @return The next medium in the buffer, with it's low
+	 * byte subtracted from <tt>128</tt>.
+	 */
+	public int readMediumS() {
+		return Transforms.signMedium(Transforms.s(buf.readUnsignedMedium()));
 	}
 
 	/**
@@ -131,6 +286,60 @@ public class InBuffer extends Packet {
 		return buf.readInt();
 	}
 
+	/**
+	 * Reads one <code>int</code> special <tt>A</tt> from the buffer.
+	 * @return The next integer in the buffer, with <tt>128</tt>
+	 * subtracted from it's low byte.
+	 */
+	public int readIntA() {
+		return Transforms.a(buf.readInt());
+	}
+
+	/**
+	 * Reads one <code>int</code> special <tt>C</tt> from the buffer.
+	 * @return The next integer in the buffer, with it's low byte negated.
+	 */
+	public int readIntC() {
+		return Transforms.c(buf.readInt());
+	}
+
+	/**
+	 * Reads one <code>int</code> special <tt>S</tt> from the buffer.
+	 * @return The next integer in the buffer, with it's low
+	 * byte subtracted from <tt>128</tt>.
+	 */
+	public int readIntS() {
+		return Transforms.s(buf.readInt());
+	}
+
+	/**
+	 * Reads one little endian <code>int</code> from the buffer.
+	 * @return The next little endian integer in the buffer.
+	 */
+	public int readIntLE() {
+		return Integer.reverseBytes(buf.readInt());
+	}
+
+	/**
+	 * Reads one middle endian <code>int</code> from the buffer, of which
+	 * the bytes are ordered <tt>2, 1, 4, 3</tt>, counting from the least
+	 * significant byte.
+	 * @return The next middle endian integer in the buffer.
+	 */
+	public int readIntME1() {
+		return Transforms.me1(buf.readInt());
+	}
+
+	/**
+	 * Reads one middle endian <code>int</code> from the buffer, of which
+	 * the bytes are ordered <tt>3, 4, 1, 2</tt>, counting from the least
+	 * significant byte.
+	 * @return The next middle endian integer in the buffer.
+	 */
+	public int readIntME2() {
+		return Transforms.me2(buf.readInt());
+	}
+
 	/**
 	 * Reads and then unsigns one <code>int</code> from the buffer.
 	 * @return The next unsigned integer in the buffer.
@@ -139,6 +348,60 @@ public class InBuffer extends Packet {
 		return buf.readUnsignedInt();
 	}
 
+	/**
+	 * Reads one smart from the buffer. A smart is one <code>byte</code>
+	 * should the value be less than <tt>128</tt>, otherwise one
+	 * <code>short</code> with the highest bit set.
+	 * @return The next smart in the buffer, from <tt>0</tt> to <tt>32767</tt>.
+	 */
+	public int readSmart() {
+		if (buf.getByte(buf.readerIndex()) >= 0) {
+			return buf.readUnsignedByte();
+		}
+		return buf.readUnsignedShort() - 32768;
+	}
+
+	/**
+	 * Reads one signed smart from the buffer. A signed smart is one
+	 * <code>byte</code> should the value be within <tt>-64</tt> and
+	 * <tt>63</tt>, otherwise one <code>short</code> with the highest bit set.
+	 * @return The next signed smart in the buffer, from <tt>-16384</tt> to <tt>16383</tt>.
+	 */
+	public int readSignedSmart() {
+		if (buf.getByte(buf.readerIndex()) >= 0) {
+			return buf.readUnsignedByte() - 64;
+		}
+		return buf.readUnsignedShort() - 49152;
+	}
+
+	/**
+	 * Reads one unsigned variable-length <code>int</code> from the buffer.
+	 * @return The next variable-length int in the buffer.
+	 * @see {@link BufferUtils#readVarInt}
+	 */
+	public int readVarInt() {
+		return BufferUtils.readVarInt(buf);
+	}
+
+	/**
+	 * Reads one signed variable-length <code>int</code> from the buffer,
+	 * which was zig-zag encoded.
+	 * @return The next signed variable-length int in the buffer.
+	 * @see {@link BufferUtils#decodeZigZag}
+	 */
+	public int readSignedVarInt() {
+		return BufferUtils.decodeZigZag(BufferUtils.readVarInt(buf));
+	}
+
+	/**
+	 * Reads one unsigned variable-length <code>long</code> from the buffer.
+	 * @return The next variable-length long in the buffer.
+	 * @see {@link BufferUtils#readVarLong}
+	 */
+	public long readVarLong() {
+		return BufferUtils.readVarLong(buf);
+	}
+
 	/**
 	 * Reads one <code>long</code> from the buffer.
 	 * @return The next long in the buffer.
@@ -175,6 +438,39 @@ public class InBuffer extends Packet {
 		return BufferUtils.readString(buf);
 	}
 
+	/**
+	 * Reads one <code>String</code> from the buffer, reusing an equal
+	 * string from a cache should there be one.
+	 * @param cache The cache of frequently repeated strings.
+	 * @return The next string in the buffer.
+	 */
+	public String readString(StringCache cache) {
+		return BufferUtils.readString(buf, cache);
+	}
+
+	/**
+	 * Transfers bytes from the buffer into an array.
+	 * @param dst The array to transfer to.
+	 * @param dstIndex The index of the array to start at.
+	 * @param length The number of bytes to transfer.
+	 */
+	public void readBytes(byte[] dst, int dstIndex, int length) {
+		buf.readBytes(dst, dstIndex, length);
+	}
+
+	/**
+	 * Transfers bytes from the buffer into an array in reverse order,
+	 * subtracting <tt>128</tt> from each of them.
+	 * @param dst The array to transfer to.
+	 * @param dstIndex The index of the array to start at.
+	 * @param length The number of bytes to transfer.
+	 */
+	public void readBytesReverseA(byte[] dst, int dstIndex, int length) {
+		for (int i = dstIndex + length - 1; i >= dstIndex; i--) {
+			dst[i] = (byte) (buf.readByte() - 128);
+		}
+	}
+
 	/**
 	 * Checks whether or not the buffer is readable.
 	 * @return <code>true</code> if the buffer has greater
@@ -35,6 +35,18 @@ import us.nital.util.BufferUtils;
  */
 public class OutBuffer extends Packet {
 
+	/**
+	 * Holds the bits which have been written during bit access,
+	 * but have not yet been flushed to the buffer.
+	 */
+	private long bitRegister;
+
+	/**
+	 * The number of bits held by the {@link #bitRegister}, or
+	 * <tt>-1</tt> if the buffer is not in bit access.
+	 */
+	private int bitCount = -1;
+
 	/**
 	 * Constructs a new output buffer.
 	 * @param opCode The operation code which is used 
@@ -138,6 +150,56 @@ public class OutBuffer extends Packet {
 		return this;
 	}
 
+	/**
+	 * Writes one <code>short</code> special type <tt>A</tt> to the buffer.
+	 * @param v The value of the short, of which <tt>128</tt> is added to the low byte.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeShortA(int v) {
+		buf.writeShort(Transforms.a(v));
+		return this;
+	}
+
+	/**
+	 * Writes one <code>short</code> special type <tt>C</tt> to the buffer.
+	 * @param v The value of the short, of which the low byte is negated.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeShortC(int v) {
+		buf.writeShort(Transforms.c(v));
+		return this;
+	}
+
+	/**
+	 * Writes one <code>short</code> special type <tt>S</tt> to the buffer.
+	 * @param v The value of the short, of which the low byte is subtracted from <tt>128</tt>.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeShortS(int v) {
+		buf.writeShort(Transforms.s(v));
+		return this;
+	}
+
+	/**
+	 * Writes one little endian <code>short</code> to the buffer.
+	 * @param v The short's value.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeShortLE(int v) {
+		buf.writeShort(Transforms.reverseShort(v));
+		return this;
+	}
+
+	/**
+	 * Writes one little endian <code>short</code> special type <tt>A</tt> to the buffer.
+	 * @param v The value of the short, of which <tt>128</tt> is added to the low byte.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeShortLEA(int v) {
+		buf.writeShort(Transforms.reverseShort(Transforms.a(v)));
+		return this;
+	}
+
 	/**
 	 * Writes numerous <code>short</code>s to the buffer.
 	 * @param v The array of shorts to write.
@@ -158,6 +220,56 @@ public class OutBuffer extends Packet {
 				return this;
 	}
 
+	/**
+	 * Writes one medium, which is three <code>byte</code>s, to the buffer.
+	 * @param v The medium's value.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeMedium(int v) {
+		buf.writeMedium(v);
+		return this;
+	}
+
+	/**
+	 * Writes one little endian medium to the buffer.
+	 * @param v The medium's value.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeMediumLE(int v) {
+		buf.writeMedium(Transforms.reverseMedium(v));
+		return this;
+	}
+
+	/**
+	 * Writes one medium special type <tt>A</tt> to the buffer.
+	 * @param v The value of the medium, of which <tt>128</tt> is added to the low byte.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeMediumA(int v) {
+		buf.writeMedium(Transforms.a(v));
+		return this;
+	}
+
+	/**
+	 * Writes one medium special type <tt>C</tt> to the buffer.
+	 * @param v The value of the medium, of which the low byte is negated.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeMediumC(int v) {
+		buf.writeMedium(Transforms.c(v));
+		return this;
+	}
+
+	/**
+	 * Writes one medium special type <tt>S</tt> to the buffer.
+	 * @param v The value of the medium, of which the low byte is subtracted from <tt>128</tt>.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeMediumS(int v) {
+		buf.writeMedium(Transforms.s(v));
+		return this;
+	}
+
 	/**
 	 * Writes one <code>int</code> to the buffer.
 	 * @param v The integer's value.
@@ -168,6 +280,70 @@ public class OutBuffer extends Packet {
 		return this;
 	}
 
+	/**
+	 * Writes one <code>int</code> special type <tt>A</tt> to the buffer.
+	 * @param v The value of the integer, of which <tt>128</tt> is added to the low byte.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeIntA(int v) {
+		buf.writeInt(Transforms.a(v));
+		return this;
+	}
+
+	/**
+	 * Writes one <code>int</code> special type <tt>C</tt> to the buffer.
+	 * @param v The value of the integer, of which the low byte is negated.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeIntC(int v) {
+		buf.writeInt(Transforms.c(v));
+		return this;
+	}
+
+	/**
+	 * Writes one <code>int</code> special type <tt>S</tt> to the buffer.
+	 * @param v The value of the integer, of which the low byte is subtracted from <tt>128</tt>.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeIntS(int v) {
+		buf.writeInt(Transforms.s(v));
+		return this;
+	}
+
+	/**
+	 * Writes one little endian <code>int</code> to the buffer.
+	 * @param v The integer's value.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeIntLE(int v) {
+		buf.writeInt(Integer.reverseBytes(v));
+		return this;
+	}
+
+	/**
+	 * Writes one middle endian <code>int</code> to the buffer, of which
+	 * the bytes are ordered <tt>2, 1, 4, 3</tt>, counting from the least
+	 * significant byte.
+	 * @param v The integer's value.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeIntME1(int v) {
+		buf.writeInt(Transforms.me1(v));
+		return this;
+	}
+
+	/**
+	 * Writes one middle endian <code>int</code> to the buffer, of which
+	 * the bytes are ordered <tt>3, 4, 1, 2</tt>, counting from the least
+	 * significant byte.
+	 * @param v The integer's value.
+	 * @return This writer's instance, for chaining.
+	 */
+	public OutBuffer writeIntME2(int v) {
+		buf.writeInt(Transforms.me2(v));
+		return this;
+	}
+
 	/**
 	 * Writes numerous <code>int</code>s to the buffer.
 	 * @param v The array of integers to write.
@@ -188,6 +364,80 @@ public class OutBuffer extends Packet {
 				return this;
 	}
 
+	/**
+	 * Writes one smart to the buffer. A smart is one <code>byte</code>
+	 * should the value be less than <tt>128</tt>, otherwise one
+	 * <code>short</code> with the highest bit set.
+	 * @param v The smart's value, from <tt>0</tt> to <tt>32767</tt>.
+	 * @return This writer's instance, for chaining.
+	 * @throws IllegalArgumentException should the value be out of range.
+	 */
+	public OutBuffer writeSmart(int v) {
+		if (v < 0 || v > 32767) {
+			throw new IllegalArgumentException("Smart out of range: " + v);
+		}
+		if (v < 128) {
+			buf.writeByte(v);
+		} else {
+			buf.writeShort(v + 32768);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes one signed smart to the buffer. A signed smart is one
+	 * <code>byte</code> should the value be within <tt>-64</tt> and
+	 * <tt>63</tt>, otherwise one <code>short</code> with the highest bit set.
+	 * @param v The signed smart's value, from <tt>-16384</tt> to <tt>16383</tt>.
+	 * @return This writer's instance, for chaining.
+	 * @throws IllegalArgumentException should the value be out of range.
+	 */
+	public OutBuffer writeSignedSmart(int v) {
+		if (v < -16384 || v > 16383) {
+			throw new IllegalArgumentException("Signed smart out of range: " + v);
+		}
+		if (v >= -64 && v < 64) {
+			buf.writeByte(v + 64);
+		} else {
+			buf.writeShort(v + 49152);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes one unsigned variable-length <code>int</code> to the buffer.
+	 * @param v The int's value, which is treated as unsigned.
+	 * @return This writer's instance, for chaining.
+	 * @see {@link BufferUtils#writeVarInt}
+	 */
+	public OutBuffer writeVarInt(int v) {
+		BufferUtils.writeVarInt(buf, v);
+		return this;
+	}
+
+	/**
+	 * Writes one signed variable-length <code>int</code> to the buffer,
+	 * zig-zag encoded so that values near zero take few bytes.
+	 * @param v The int's value.
+	 * @return This writer's instance, for chaining.
+	 * @see {@link BufferUtils#encodeZigZag}
+	 */
+	public OutBuffer writeSignedVarInt(int v) {
+		BufferUtils.writeVarInt(buf, BufferUtils.encodeZigZag(v));
+		return this;
+	}
+
+	/**
+	 * Writes one unsigned variable-length <code>long</code> to the buffer.
+	 * @param v The long's value, which is treated as unsigned.
+	 * @return This writer's instance, for chaining.
+	 * @see {@link BufferUtils#writeVarLong}
+	 */
+	public OutBuffer writeVarLong(long v) {
+		BufferUtils.writeVarLong(buf, v);
+		return this;
+	}
+
 	/**
 	 * Writes one <code>long</code> to the buffer.
 	 * @param v The long's value.
@@ -239,4 +489,84 @@ public class OutBuffer extends Packet {
 		return this;
 	}
 
+	/**
+	 * Starts bit access. Until bit access is finished, values must be
+	 * written using {@link #writeBits(int, int)}.
+	 * @return This writer's instance, for chaining.
+	 * @throws IllegalStateException should the buffer already be in bit access.
+	 */
+	public OutBuffer startBitAccess() {
+		if (bitCount != -1) {
+			throw new IllegalStateException("Already in bit access.");
+		}
+		bitRegister = 0;
+		bitCount = 0;
+		return this;
+	}
+
+	/**
+	 * Writes a value as a number of bits, the most significant bit first.
+	 * 
+	 * <p>The bits are held in a register which is flushed to the buffer
+	 * a whole <code>int</code> at a time.</p>
+	 * 
+	 * @param numBits The number of bits to write, from <tt>1</tt> to <tt>32</tt>.
+	 * @param value The value, of which only the lowest <tt>numBits</tt> are written.
+	 * @return This writer's instance, for chaining.
+	 * @throws IllegalArgumentException should the number of bits be out of range.
+	 * @throws IllegalStateException should the buffer not be in bit access.
+	 */
+	public OutBuffer writeBits(int numBits, int value) {
+		if (numBits < 1 || numBits > 32) {
+			throw new IllegalArgumentException("Number of bits must be between 1 and 32.");
+		}
+		if (bitCount == -1) {
+			throw new IllegalStateException("Not in bit access.");
+		}
+
+		/*
+		 * At most 31 bits are held before the new ones are shifted in,
+		 * so the register never overflows.
+		 */
+		bitRegister = (bitRegister << numBits) | (value & (0xFFFFFFFFL >>> (32 - numBits)));
+		bitCount += numBits;
+
+		if (bitCount >= 32) {
+			bitCount -= 32;
+			buf.writeInt((int) (bitRegister >>> bitCount));
+		}
+		return this;
+	}
+
+	/**
+	 * Writes one bit.
+	 * @param flag <code>true</code> to write <tt>1</tt>, otherwise <tt>0</tt>.
+	 * @return This writer's instance, for chaining.
+	 * @throws IllegalStateException should the buffer not be in bit access.
+	 */
+	public OutBuffer writeBit(boolean flag) {
+		return writeBits(1, flag ? 1 : 0);
+	}
+
+	/**
+	 * Finishes bit access, flushing the bits which are left. The last
+	 * <code>byte</code> is padded with zeroes.
+	 * @return This writer's instance, for chaining.
+	 * @throws IllegalStateException should the buffer not be in bit access.
+	 */
+	public OutBuffer finishBitAccess() {
+		if (bitCount == -1) {
+			throw new IllegalStateException("Not in bit access.");
+		}
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			buf.writeByte((int) (bitRegister >>> bitCount));
+		}
+		if (bitCount > 0) {
+			buf.writeByte((int) (bitRegister << (8 - bitCount)));
+		}
+		bitCount = -1;
+		return this;
+	}
+
 }
\ No newline at end of file
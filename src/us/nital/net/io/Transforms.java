@@ -0,0 +1,112 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.io;
+
+/**
+ * Holds the value transformations of the RuneScape protocol, which are
+ * shared by {@link InBuffer} and {@link OutBuffer}.
+ * 
+ * <p>The special types <tt>A</tt>, <tt>C</tt> and <tt>S</tt> only transform
+ * the lowest <code>byte</code> of a value, whatever the width of the value.
+ * Each transform is it's own inverse, so the same method encodes and decodes.
+ * None of the transforms branch.</p>
+ * 
+ * @author Thomas Nappo
+ */
+final class Transforms {
+
+	/**
+	 * Applies the special type <tt>A</tt>, which adds <tt>128</tt> to the lowest byte.
+	 * @param v The value to transform.
+	 * @return The transformed value.
+	 */
+	static int a(int v) {
+		return (v & ~0xFF) | ((v + 128) & 0xFF);
+	}
+
+	/**
+	 * Applies the special type <tt>C</tt>, which negates the lowest byte.
+	 * @param v The value to transform.
+	 * @return The transformed value.
+	 */
+	static int c(int v) {
+		return (v & ~0xFF) | (- v & 0xFF);
+	}
+
+	/**
+	 * Applies the special type <tt>S</tt>, which subtracts the lowest byte from <tt>128</tt>.
+	 * @param v The value to transform.
+	 * @return The transformed value.
+	 */
+	static int s(int v) {
+		return (v & ~0xFF) | ((128 - v) & 0xFF);
+	}
+
+	/**
+	 * Reverses the order of the lowest two bytes.
+	 * @param v The value to reverse.
+	 * @return The reversed <code>short</code>, unsigned.
+	 */
+	static int reverseShort(int v) {
+		return ((v & 0xFF) << 8) | ((v >>> 8) & 0xFF);
+	}
+
+	/**
+	 * Reverses the order of the lowest three bytes.
+	 * @param v The value to reverse.
+	 * @return The reversed medium, unsigned.
+	 */
+	static int reverseMedium(int v) {
+		return ((v & 0xFF) << 16) | (v & 0xFF00) | ((v >>> 16) & 0xFF);
+	}
+
+	/**
+	 * Sign extends a medium.
+	 * @param v The unsigned medium.
+	 * @return The signed medium.
+	 */
+	static int signMedium(int v) {
+		return (v << 8) >> 8;
+	}
+
+	/**
+	 * Converts between the big endian and the first middle endian order,
+	 * in which the bytes of an <code>int</code> are ordered
+	 * <tt>2, 1, 4, 3</tt>, counting from the least significant byte.
+	 * @param v The value to convert.
+	 * @return The converted value.
+	 */
+	static int me1(int v) {
+		return Integer.rotateLeft(v, 16);
+	}
+
+	/**
+	 * Converts between the big endian and the second middle endian order,
+	 * in which the bytes of an <code>int</code> are ordered
+	 * <tt>3, 4, 1, 2</tt>, counting from the least significant byte.
+	 * @param v The value to convert.
+	 * @return The converted value.
+	 */
+	static int me2(int v) {
+		return ((v >>> 8) & 0x00FF00FF) | ((v << 8) & 0xFF00FF00);
+	}
+
+}
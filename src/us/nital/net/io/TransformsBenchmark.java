@@ -0,0 +1,403 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.io;
+
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Measures the transformed values of {@link InBuffer} and {@link OutBuffer},
+ * which are built upon {@link Transforms}, against naive implementations
+ * which write and read one <code>byte</code> at a time as the 317 client does.
+ * 
+ * <p>Each value type is written and then read back over the same values by
+ * both. Before it is measured, the values written by one are read back by
+ * the other, so that a transform which disagrees with the naive one is
+ * reported rather than measured.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class TransformsBenchmark {
+
+	/**
+	 * The number of values which are generated.
+	 */
+	private static final int VALUES = 100000;
+
+	/**
+	 * The number of rounds which are run before measuring, so
+	 * that both implementations have been compiled.
+	 */
+	private static final int WARMUP_ROUNDS = 50;
+
+	/**
+	 * The number of rounds which are measured.
+	 */
+	private static final int MEASURED_ROUNDS = 100;
+
+	/**
+	 * The number of times each implementation is measured.
+	 */
+	private static final int TRIALS = 3;
+
+	/**
+	 * Keeps the results of each round, so that they can not be
+	 * optimized away.
+	 */
+	private static long sink;
+
+	/**
+	 * Writes and reads one type of value.
+	 * @author Thomas Nappo
+	 */
+	private static abstract class Codec {
+
+		/**
+		 * Writes a value.
+		 * @param out The buffer to write to.
+		 * @param v The value.
+		 */
+		abstract void write(OutBuffer out, int v);
+
+		/**
+		 * Reads a value.
+		 * @param in The buffer to read from.
+		 * @return The value.
+		 */
+		abstract int read(InBuffer in);
+
+	}
+
+	/**
+	 * This class cannot be instantiated.
+	 */
+	private TransformsBenchmark() {
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * @param args The command line parameters, which are ignored.
+	 */
+	public static void main(String[] args) {
+		Random random = new Random(0);
+		int[] values = new int[VALUES];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt();
+		}
+		int[] smarts = new int[VALUES];
+		for (int i = 0; i < smarts.length; i++) {
+			smarts[i] = random.nextBoolean() ? random.nextInt(128) : random.nextInt(32768);
+		}
+		ChannelBuffer buf = ChannelBuffers.buffer(VALUES * 4);
+
+		compare("shortA", values, 0xFFFF, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeShortA(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readUnsignedShortA();
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				buf.writeByte(v >> 8);
+				buf.writeByte(v + 128);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int high = in.readUnsignedByte() << 8;
+				return high + ((in.readByte() - 128) & 0xFF);
+			}
+		});
+
+		compare("shortLEA", values, 0xFFFF, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeShortLEA(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readUnsignedShortLEA();
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				buf.writeByte(v + 128);
+				buf.writeByte(v >> 8);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int low = (in.readByte() - 128) & 0xFF;
+				return (in.readUnsignedByte() << 8) + low;
+			}
+		});
+
+		compare("mediumLE", values, 0xFFFFFF, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeMediumLE(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readMediumLE() & 0xFFFFFF;
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				buf.writeByte(v);
+				buf.writeByte(v >> 8);
+				buf.writeByte(v >> 16);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int v = in.readUnsignedByte();
+				v += in.readUnsignedByte() << 8;
+				return v + (in.readUnsignedByte() << 16);
+			}
+		});
+
+		compare("intLE", values, -1, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeIntLE(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readIntLE();
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				buf.writeByte(v);
+				buf.writeByte(v >> 8);
+				buf.writeByte(v >> 16);
+				buf.writeByte(v >> 24);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int v = in.readUnsignedByte();
+				v += in.readUnsignedByte() << 8;
+				v += in.readUnsignedByte() << 16;
+				return v + (in.readUnsignedByte() << 24);
+			}
+		});
+
+		compare("intME1", values, -1, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeIntME1(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readIntME1();
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				buf.writeByte(v >> 8);
+				buf.writeByte(v);
+				buf.writeByte(v >> 24);
+				buf.writeByte(v >> 16);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int v = in.readUnsignedByte() << 8;
+				v += in.readUnsignedByte();
+				v += in.readUnsignedByte() << 24;
+				return v + (in.readUnsignedByte() << 16);
+			}
+		});
+
+		compare("intME2", values, -1, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeIntME2(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readIntME2();
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				buf.writeByte(v >> 16);
+				buf.writeByte(v >> 24);
+				buf.writeByte(v);
+				buf.writeByte(v >> 8);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int v = in.readUnsignedByte() << 16;
+				v += in.readUnsignedByte() << 24;
+				v += in.readUnsignedByte();
+				return v + (in.readUnsignedByte() << 8);
+			}
+		});
+
+		compare("smart", smarts, -1, buf, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				out.writeSmart(v);
+			}
+
+			@Override
+			int read(InBuffer in) {
+				return in.readSmart();
+			}
+		}, new Codec() {
+			@Override
+			void write(OutBuffer out, int v) {
+				ChannelBuffer buf = out.getInternalBuffer();
+				if (v < 128) {
+					buf.writeByte(v);
+				} else {
+					buf.writeByte((v >> 8) + 128);
+					buf.writeByte(v);
+				}
+			}
+
+			@Override
+			int read(InBuffer in) {
+				int peek = in.getInternalBuffer().getUnsignedByte(in.getInternalBuffer().readerIndex());
+				if (peek < 128) {
+					return in.readUnsignedByte();
+				}
+				int high = in.readUnsignedByte() - 128;
+				return (high << 8) + in.readUnsignedByte();
+			}
+		});
+	}
+
+	/**
+	 * Measures one type of value with both implementations, printing
+	 * their results.
+	 * @param name The name of the type of value.
+	 * @param values The values to write and read.
+	 * @param mask The mask of the bits of a value which are written.
+	 * @param buf The buffer to write to and read from.
+	 * @param current The current implementation.
+	 * @param naive The naive implementation.
+	 */
+	private static void compare(String name, int[] values, int mask, ChannelBuffer buf, Codec current, Codec naive) {
+		if (!agrees(values, mask, buf, current, naive) || !agrees(values, mask, buf, naive, current)) {
+			System.out.println(String.format("%-9s disagrees with the naive implementation", name));
+			return;
+		}
+		/*
+		 * Both are measured a few times in turn, and the best of each is
+		 * kept, so that neither is favoured by being measured first.
+		 */
+		double currentNanos = Double.MAX_VALUE;
+		double naiveNanos = Double.MAX_VALUE;
+		for (int trial = 0; trial < TRIALS; trial++) {
+			currentNanos = Math.min(currentNanos, measure(values, mask, buf, current));
+			naiveNanos = Math.min(naiveNanos, measure(values, mask, buf, naive));
+		}
+		System.out.println(String.format("%-9s current %6.2f ns/value, naive %6.2f ns/value (%.1fx)",
+				name, currentNanos, naiveNanos, naiveNanos / currentNanos));
+	}
+
+	/**
+	 * Checks that the values written by one implementation are read
+	 * back as they were by another.
+	 * @param values The values to write and read.
+	 * @param mask The mask of the bits of a value which are written.
+	 * @param buf The buffer to write to and read from.
+	 * @param writer The implementation which writes.
+	 * @param reader The implementation which reads.
+	 * @return <code>true</code> if every value was read back.
+	 */
+	private static boolean agrees(int[] values, int mask, ChannelBuffer buf, Codec writer, Codec reader) {
+		buf.clear();
+		OutBuffer out = new OutBuffer(buf);
+		for (int v : values) {
+			writer.write(out, v & mask);
+		}
+		InBuffer in = new InBuffer(buf);
+		for (int v : values) {
+			if (reader.read(in) != (v & mask)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Measures an implementation.
+	 * @param values The values to write and read.
+	 * @param mask The mask of the bits of a value which are written.
+	 * @param buf The buffer to write to and read from.
+	 * @param codec The implementation.
+	 * @return The average number of nanoseconds to write and read a value.
+	 */
+	private static double measure(int[] values, int mask, ChannelBuffer buf, Codec codec) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			run(values, mask, buf, codec);
+		}
+		long start = System.nanoTime();
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			run(values, mask, buf, codec);
+		}
+		return (System.nanoTime() - start) / (double) MEASURED_ROUNDS / values.length;
+	}
+
+	/**
+	 * Writes every value and then reads them all back.
+	 * @param values The values to write and read.
+	 * @param mask The mask of the bits of a value which are written.
+	 * @param buf The buffer to write to and read from.
+	 * @param codec The implementation.
+	 */
+	private static void run(int[] values, int mask, ChannelBuffer buf, Codec codec) {
+		buf.clear();
+		OutBuffer out = new OutBuffer(buf);
+		for (int v : values) {
+			codec.write(out, v & mask);
+		}
+		InBuffer in = new InBuffer(buf);
+		for (int i = 0; i < values.length; i++) {
+			sink += codec.read(in);
+		}
+	}
+
+}
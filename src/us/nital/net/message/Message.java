@@ -0,0 +1,113 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message;
+
+/**
+ * A message which has been decoded from a packet, or which
+ * is to be encoded into one.
+ * 
+ * <p>Messages are decoded by a {@link MessageDecoder} on the network thread
+ * which received the packet, so that a {@link MessageHandler} only receives
+ * plain data. Likewise messages which are sent are encoded by a
+ * {@link MessageEncoder} on the network thread which writes them. Once
+ * handled or encoded, a message is recycled back into the
+ * {@link MessagePool} it was acquired from.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public abstract class Message {
+
+	/**
+	 * The operation code of the packet which the message
+	 * was decoded from, or is to be encoded into.
+	 */
+	private int opCode;
+
+	/**
+	 * Constructs a new message which is to be decoded.
+	 */
+	protected Message() {
+	}
+
+	/**
+	 * Constructs a new message which is to be encoded.
+	 * @param opCode The operation code of the packet which
+	 * the message is to be encoded into.
+	 */
+	protected Message(int opCode) {
+		this.opCode = opCode;
+	}
+
+	/**
+	 * Gets the message's {@link #opCode}.
+	 * @return The operation code of the packet which the message
+	 * was decoded from, or is to be encoded into.
+	 */
+	public int getOpCode() {
+		return opCode;
+	}
+
+	/**
+	 * Sets the message's {@link #opCode}.
+	 * @param opCode The operation code of the packet which
+	 * the message was decoded from.
+	 */
+	void setOpCode(int opCode) {
+		this.opCode = opCode;
+	}
+
+	/**
+	 * The pool which the message was acquired from, or
+	 * <code>null</code> if the message is not pooled.
+	 */
+	MessagePool<?> pool;
+
+	/**
+	 * Whether or not the message has been recycled since
+	 * it was last acquired.
+	 */
+	boolean recycled;
+
+	/**
+	 * Clears the message's fields, so that it
+	 * holds no references once it is recycled.
+	 */
+	protected abstract void reset();
+
+	/**
+	 * Recycles the message back into it's pool, should it be pooled. The message
+	 * must not be used once it is recycled.
+	 * @throws IllegalStateException should the message
+	 * already have been recycled.
+	 */
+	public final void recycle() {
+		if (pool == null) {
+			return;
+		}
+		if (recycled) {
+			throw new IllegalStateException("Message already recycled.");
+		}
+		recycled = true;
+		reset();
+		pool.release(this);
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message;
+
+import us.nital.net.io.InBuffer;
+
+/**
+ * This interface provides the blueprints for a message decoder.
+ * 
+ * @author Thomas Nappo
+ * @param <M> The type of message which is decoded.
+ */
+public interface MessageDecoder<M extends Message> {
+
+	/**
+	 * Called when a packet is decoded. This is called on the network thread
+	 * which received the packet, so the message should be fully read from
+	 * the input rather than keeping a reference to it.
+	 * @param in The payload of the packet.
+	 * @return The decoded message, or <code>null</code> should the
+	 * packet be malformed.
+	 */
+	public M decode(InBuffer in);
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message;
+
+import us.nital.model.Player;
+import us.nital.net.io.InBuffer;
+import us.nital.net.message.decoders.*;
+import us.nital.net.message.handlers.*;
+
+/**
+ * Maintains a fixed array which associates operation codes with a
+ * {@link MessageDecoder} and the {@link MessageHandler} of the
+ * decoded messages.
+ * 
+ * <p>Packets which have a decoder are decoded into messages by the network,
+ * while those which do not are still passed on to the packet dispenser.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class MessageDispenser {
+
+	/**
+	 * Associates a decoder with the handler of the messages it decodes.
+	 * @author Thomas Nappo
+	 * @param <M> The type of message.
+	 */
+	private static final class Registration<M extends Message> {
+
+		/**
+		 * The decoder of the messages.
+		 */
+		private final MessageDecoder<M> decoder;
+
+		/**
+		 * The handler of the messages.
+		 */
+		private final MessageHandler<? super M> handler;
+
+		/**
+		 * Constructs a new registration.
+		 * @param decoder The decoder of the messages.
+		 * @param handler The handler of the messages.
+		 */
+		private Registration(MessageDecoder<M> decoder, MessageHandler<? super M> handler) {
+			this.decoder = decoder;
+			this.handler = handler;
+		}
+
+	}
+
+	/**
+	 * A fixed array of registrations which is indexed by operation code.
+	 */
+	/*
+	 * This array is of length 256 because packet operation codes range
+	 * from 0-255 as they are written/read as an unsigned byte.
+	 */
+	private static final Registration<?>[] registrations = new Registration<?>[256];
+
+	/**
+	 * Encapsulates the singleton instance of the dispenser.
+	 * @author Thomas Nappo
+	 */
+	private static final class SingletonContainer {
+		private static final MessageDispenser INSTANCE = new MessageDispenser();
+	}
+
+	/**
+	 * Gets the singleton instance of the dispenser.
+	 * @return The one and only instance of the dispenser.
+	 */
+	public static MessageDispenser getSingleton() {
+		return SingletonContainer.INSTANCE;
+	}
+
+	/*
+	 * The internal components within the brackets should be used to
+	 * register the decoders and handlers of operation codes.
+	 */
+	static {
+		register(4, new PublicChatMessageDecoder(), new PublicChatMessageHandler());
+	}
+
+	/**
+	 * Registers the decoder and handler of an operation code.
+	 * @param opCode The operation code.
+	 * @param decoder The decoder of the messages.
+	 * @param handler The handler of the messages.
+	 */
+	private static <M extends Message> void register(int opCode, MessageDecoder<M> decoder, MessageHandler<? super M> handler) {
+		registrations[opCode] = new Registration<M>(decoder, handler);
+	}
+
+	/**
+	 * Checks whether or not an operation code has a decoder.
+	 * @param opCode The operation code.
+	 * @return <code>true</code> if packets of the operation
+	 * code can be decoded into messages.
+	 */
+	public boolean isDecodable(int opCode) {
+		return registrations[opCode] != null;
+	}
+
+	/**
+	 * Decodes a packet into a message.
+	 * @param in The packet.
+	 * @return The decoded message, or <code>null</code> should
+	 * the packet be malformed.
+	 */
+	public Message decode(InBuffer in) {
+		Message message = registrations[in.getOpCode()].decoder.decode(in);
+		if (message != null) {
+			message.setOpCode(in.getOpCode());
+		}
+		return message;
+	}
+
+	/**
+	 * Dispenses a message to it's appropriate handler, and then
+	 * recycles it.
+	 * @param player The player who sent the message.
+	 * @param message The message.
+	 */
+	public void handle(Player player, Message message) {
+		try {
+			handle(registrations[message.getOpCode()], player, message);
+		} finally {
+			message.recycle();
+		}
+	}
+
+	/**
+	 * Dispenses a message to the handler of a registration.
+	 * @param registration The registration of the message's operation code.
+	 * @param player The player who sent the message.
+	 * @param message The message, which is of the registration's type
+	 * as it was decoded by the registration's decoder.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <M extends Message> void handle(Registration<M> registration, Player player, Message message) {
+		registration.handler.handle(player, (M) message);
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message;
+
+import us.nital.model.Player;
+
+/**
+ * This interface provides the blueprints for a message handler.
+ * 
+ * @author Thomas Nappo
+ * @param <M> The type of message which is handled.
+ */
+public interface MessageHandler<M extends Message> {
+
+	/**
+	 * Called when the message is handled. The message is recycled once
+	 * this returns, so no reference to it may be kept.
+	 * @param player The player who sent the message.
+	 * @param message The message.
+	 */
+	public void handle(Player player, M message);
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message;
+
+/**
+ * A bounded pool of reusable messages.
+ * 
+ * <p>Messages are acquired by decoders on the network threads and recycled
+ * once they have been handled. Should the pool be empty a new message is
+ * created, and should it be full a recycled message is left to the
+ * garbage collector.</p>
+ * 
+ * @author Thomas Nappo
+ * @param <M> The type of message.
+ */
+public abstract class MessagePool<M extends Message> {
+
+	/**
+	 * The messages which are ready to be acquired.
+	 */
+	private final Message[] free;
+
+	/**
+	 * The number of messages which are ready to be acquired.
+	 */
+	private int size;
+
+	/**
+	 * Constructs a new message pool.
+	 * @param capacity The maximum number of messages to keep.
+	 */
+	public MessagePool(int capacity) {
+		this.free = new Message[capacity];
+	}
+
+	/**
+	 * Creates a new message, for when the pool is empty.
+	 * @return The new message.
+	 */
+	protected abstract M create();
+
+	/**
+	 * Acquires a message from the pool.
+	 * @return A pooled message, or a new one if the pool is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public M acquire() {
+		Message message = null;
+		synchronized (this) {
+			if (size > 0) {
+				message = free[--size];
+				free[size] = null;
+			}
+		}
+		if (message == null) {
+			message = create();
+			message.pool = this;
+		}
+		message.recycled = false;
+		return (M) message;
+	}
+
+	/**
+	 * Releases a message back into the pool.
+	 * @param message The recycled message.
+	 */
+	synchronized void release(Message message) {
+		if (size < free.length) {
+			free[size++] = message;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message.decoders;
+
+import us.nital.net.io.InBuffer;
+import us.nital.net.message.MessageDecoder;
+import us.nital.net.message.impl.PublicChatMessage;
+import us.nital.util.TextUtils;
+
+/**
+ * Decodes the public chat packet.
+ * 
+ * @author Thomas Nappo
+ */
+public class PublicChatMessageDecoder implements MessageDecoder<PublicChatMessage> {
+
+	@Override
+	public PublicChatMessage decode(InBuffer in) {
+		int effects = in.readUnsignedByteS();
+		int colour = in.readUnsignedByteS();
+
+		/*
+		 * The rest of the packet is the packed text, which
+		 * can not be longer than the client allows.
+		 */
+		int length = in.readableBytes();
+		if (length > TextUtils.MAXIMUM_PACKED_LENGTH) {
+			return null;
+		}
+
+		PublicChatMessage message = PublicChatMessage.POOL.acquire();
+		message.setEffects(effects);
+		message.setColour(colour);
+		message.setLength(length);
+		in.readBytesReverseA(message.getText(), 0, length);
+		return message;
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message.encoders;
+
+import us.nital.net.io.OutBuffer;
+import us.nital.net.message.MessageEncoder;
+import us.nital.net.message.impl.ServerMessage;
+import us.nital.net.packet.Packet.Type;
+
+/**
+ * Encodes the server message packet.
+ * 
+ * @author Thomas Nappo
+ */
+public class ServerMessageEncoder implements MessageEncoder<ServerMessage> {
+
+	@Override
+	public OutBuffer encode(ServerMessage message) {
+		return new OutBuffer(message.getOpCode(), Type.VAR_BYTE).writeString(message.getMessage());
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message.handlers;
+
+import java.util.Arrays;
+
+import us.nital.model.ChatMessage;
+import us.nital.model.Player;
+import us.nital.net.message.MessageHandler;
+import us.nital.net.message.impl.PublicChatMessage;
+
+/**
+ * Handles public chat by setting the player's chat message,
+ * which is relayed to observing players.
+ * 
+ * @author Thomas Nappo
+ */
+public class PublicChatMessageHandler implements MessageHandler<PublicChatMessage> {
+
+	@Override
+	public void handle(Player player, PublicChatMessage message) {
+		/*
+		 * The text is copied because the message is recycled.
+		 */
+		byte[] text = Arrays.copyOf(message.getText(), message.getLength());
+		player.setChatMessage(new ChatMessage(message.getColour(), message.getEffects(), text));
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message.impl;
+
+import us.nital.net.message.Message;
+import us.nital.net.message.MessagePool;
+import us.nital.util.TextUtils;
+
+/**
+ * A message which is sent when the player chats publicly.
+ * 
+ * @author Thomas Nappo
+ */
+public final class PublicChatMessage extends Message {
+
+	/**
+	 * The pool of public chat messages.
+	 */
+	public static final MessagePool<PublicChatMessage> POOL = new MessagePool<PublicChatMessage>(64) {
+
+		@Override
+		protected PublicChatMessage create() {
+			return new PublicChatMessage();
+		}
+
+	};
+
+	/**
+	 * The effects of the message (for example waving or scrolling).
+	 */
+	private int effects;
+
+	/**
+	 * The colour of the message.
+	 */
+	private int colour;
+
+	/**
+	 * The packed text of the message, which is reused by every
+	 * message acquired from the pool.
+	 */
+	private final byte[] text = new byte[TextUtils.MAXIMUM_PACKED_LENGTH];
+
+	/**
+	 * The number of bytes of the packed text.
+	 */
+	private int length;
+
+	/**
+	 * Gets the message's {@link #effects}.
+	 * @return The effects of the message.
+	 */
+	public int getEffects() {
+		return effects;
+	}
+
+	/**
+	 * Sets the message's {@link #effects}.
+	 * @param effects The effects of the message.
+	 */
+	public void setEffects(int effects) {
+		this.effects = effects;
+	}
+
+	/**
+	 * Gets the message's {@link #colour}.
+	 * @return The colour of the message.
+	 */
+	public int getColour() {
+		return colour;
+	}
+
+	/**
+	 * Sets the message's {@link #colour}.
+	 * @param colour The colour of the message.
+	 */
+	public void setColour(int colour) {
+		this.colour = colour;
+	}
+
+	/**
+	 * Gets the message's packed {@link #text}. Only the first
+	 * {@link #getLength()} bytes belong to the message.
+	 * @return The packed text of the message.
+	 */
+	public byte[] getText() {
+		return text;
+	}
+
+	/**
+	 * Gets the message's {@link #length}.
+	 * @return The number of bytes of the packed text.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Sets the message's {@link #length}.
+	 * @param length The number of bytes of the packed text.
+	 */
+	public void setLength(int length) {
+		this.length = length;
+	}
+
+	@Override
+	protected void reset() {
+		effects = 0;
+		colour = 0;
+		length = 0;
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.message.impl;
+
+import us.nital.net.message.Message;
+
+/**
+ * A game message which appears inside the chat box.
+ * 
+ * @author Thomas Nappo
+ */
+public final class ServerMessage extends Message {
+
+	/**
+	 * The message's context.
+	 */
+	private final String message;
+
+	/**
+	 * Constructs a new server message.
+	 * @param message The message's context.
+	 */
+	public ServerMessage(String message) {
+		super(253);
+		this.message = message;
+	}
+
+	/**
+	 * Gets the message's context.
+	 * @return The message's context.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	protected void reset() {
+	}
+
+}
@@ -37,10 +37,10 @@ public final class PacketDispenser {
 	 * find the associated handler implementation.
 	 */
 	/*
-	 * This array of of length 255 because packet operation codes range
+	 * This array is of length 256 because packet operation codes range
 	 * from 0-255 as they are written/read as an unsigned byte.
 	 */
-	private static final PacketHandler[] handlers = new PacketHandler[255];
+	private static final PacketHandler[] handlers = new PacketHandler[256];
 
 	/**
 	 * Encapsulates the singleton instance of the dispenser.
@@ -63,7 +63,16 @@ public final class PacketDispenser {
 	 * provide developers with information about unhandled packet 
 	 * requests which have been received by the server.
 	 */
-	private static final PacketHandler DEFAULT = new DefaultPacketHandler();
+	private static final DefaultPacketHandler DEFAULT = new DefaultPacketHandler();
+
+	/**
+	 * Gets the dispenser's default packet handler.
+	 * @return The dummy handler which counts unhandled packet
+	 * requests, and can be used to summarize them on demand.
+	 */
+	public DefaultPacketHandler getDefaultHandler() {
+		return DEFAULT;
+	}
 
 	/*
 	 * The internal componenets within the constructors brackets
@@ -20,9 +20,16 @@
 
 package us.nital.net.packet;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.channel.Channel;
+
 import us.nital.model.Player;
-import us.nital.net.io.OutBuffer;
-import us.nital.net.packet.Packet.Type;
+import us.nital.net.Network;
+import us.nital.net.message.Message;
+import us.nital.net.message.impl.ServerMessage;
 
 /**
  * A packet sender is used to create predefined packets
@@ -30,6 +37,9 @@ import us.nital.net.packet.Packet.Type;
  * parameters of the functions which build packets that
  * are within.
  * 
+ * <p>Packets are sent as lightweight {@link Message}s, which are only
+ * encoded into bytes by the network thread which writes them.</p>
+ * 
  * @author Thomas Nappo
  */
 public final class PacketSender {
@@ -47,12 +57,57 @@ public final class PacketSender {
 		this.player = player;
 	}
 
+	/**
+	 * The messages which are waiting to be written.
+	 */
+	private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+
+	/**
+	 * Whether or not the {@link #flush} task has been scheduled.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/**
+	 * Writes the queued messages towards the player's connection channel.
+	 * Only one of these tasks runs at a time, so messages are written in
+	 * the order they were sent.
+	 */
+	private final Runnable flush = new Runnable() {
+		@Override
+		public void run() {
+			Channel channel = player.getSession().getChannel();
+			Object msg;
+			while ((msg = queue.poll()) != null) {
+				if (channel != null) {
+					channel.write(msg);
+				}
+			}
+			scheduled.set(false);
+
+			/*
+			 * A message might have been queued after the queue was found
+			 * to be empty, but before the task was marked as finished.
+			 */
+			if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+				Network.getSingleton().getEncoderExecutor().execute(this);
+			}
+		}
+	};
+
 	/**
 	 * Writes a message towards the player's connection channel.
+	 * 
+	 * <p>The message is queued and then written by one of the network's
+	 * encoder threads, so the encoding does not take place upon the
+	 * thread which sent the message.</p>
+	 * 
 	 * @param msg The message object to write.
 	 */
 	public void write(Object msg) {
-		player.getSession().getChannel().write(msg);
+		queue.offer(msg);
+		if (scheduled.compareAndSet(false, true)) {
+			Network.getSingleton().getEncoderExecutor().execute(flush);
+		}
 	}
 
 	/**
@@ -64,7 +119,7 @@ public final class PacketSender {
 	 * @param message The message's context.
 	 */
 	public void sendMessage(String message) {
-		write(new OutBuffer(253, Type.VAR_BYTE).writeString(message));
+		write(new ServerMessage(message));
 	}
 
 	/**
@@ -74,14 +129,14 @@ public final class PacketSender {
 		/*
 		 * This is at the core of the initialize packet.
 		 */
-		write(new OutBuffer().writeByteA(1).writeByteA(player.hashCode())); // members, index
+		write(PacketTemplates.initialize(player.hashCode())); // members, index
 
 		/*
 		 * After, we preceed to provide the client with standard login functionality.
 		 */
 
 
-		sendMessage("Welcome to RuneScape.");
+		write(PacketTemplates.welcomeMessage());
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.packet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.net.codec.Encoder;
+import us.nital.net.io.OutBuffer;
+
+/**
+ * A packet which is encoded once and then written any number of times.
+ * 
+ * <p>The encoded buffer of a template is read-only. Constant packets are
+ * written as a {@link #duplicate()}, which shares the encoded bytes. Packets
+ * with small variable fields are written as a {@link #copy()}, which
+ * is patched in place through {@link #getPayloadOffset()}.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link PacketTemplates}
+ */
+public final class PacketTemplate {
+
+	/**
+	 * The encoded packet, which can not be written to.
+	 */
+	private final ChannelBuffer encoded;
+
+	/**
+	 * The index within the encoded packet at which the payload
+	 * begins, which is after the operation code and the length.
+	 */
+	private final int payloadOffset;
+
+	/**
+	 * Constructs a new packet template.
+	 * @param packet The packet to encode.
+	 */
+	public PacketTemplate(OutBuffer packet) {
+		int length = packet.getLength();
+		this.encoded = ChannelBuffers.unmodifiableBuffer(Encoder.encode(packet));
+		this.payloadOffset = encoded.readableBytes() - length;
+	}
+
+	/**
+	 * Gets the template's {@link #payloadOffset}.
+	 * @return The index within the encoded packet at which the payload
+	 * begins, which is after the operation code and the length.
+	 */
+	public int getPayloadOffset() {
+		return payloadOffset;
+	}
+
+	/**
+	 * Gets the number of bytes of the encoded packet.
+	 * @return The encoded length.
+	 */
+	public int getLength() {
+		return encoded.readableBytes();
+	}
+
+	/**
+	 * Creates a duplicate of the encoded packet. The duplicate shares the
+	 * encoded bytes but has it's own indices, so it is safe to write
+	 * to any channel.
+	 * @return A read-only duplicate of the encoded packet.
+	 */
+	public ChannelBuffer duplicate() {
+		return encoded.duplicate();
+	}
+
+	/**
+	 * Creates a copy of the encoded packet which can be patched.
+	 * @return A writable copy of the encoded packet.
+	 */
+	public ChannelBuffer copy() {
+		return encoded.copy();
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.net.packet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.net.io.OutBuffer;
+import us.nital.net.packet.Packet.Type;
+
+/**
+ * Holds the packet templates which are sent during the handshake
+ * and login of every connection.
+ * 
+ * <p>All of the templates are built once, when this class is loaded.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link PacketTemplate}
+ */
+public final class PacketTemplates {
+
+	/**
+	 * The response to the server choice, which gets the client ready
+	 * for an update. It is eight zeroes and a separator byte, which
+	 * are followed by the server key.
+	 */
+	private static final PacketTemplate HANDSHAKE = new PacketTemplate(new OutBuffer()
+			.write(new byte[8]).write(0).writeLong(0));
+
+	/**
+	 * The index of the server key within the handshake.
+	 */
+	private static final int SERVER_KEY_INDEX = 9;
+
+	/**
+	 * The response to a login request, which is the return code followed
+	 * by the player's right level crown and whether or not they are flagged.
+	 */
+	private static final PacketTemplate LOGIN_RESPONSE = new PacketTemplate(new OutBuffer()
+			.write(0).write(0).write(0));
+
+	/**
+	 * The core of the initialize packet, which is the members flag
+	 * followed by the player's index.
+	 */
+	private static final PacketTemplate INITIALIZE = new PacketTemplate(new OutBuffer()
+			.writeByteA(1).writeByteA(0));
+
+	/**
+	 * The message which greets every player who logs in.
+	 */
+	private static final PacketTemplate WELCOME_MESSAGE = new PacketTemplate(
+			new OutBuffer(253, Type.VAR_BYTE).writeString("Welcome to RuneScape."));
+
+	/**
+	 * Creates the response to the server choice.
+	 * @param serverKey The randomly generated server key.
+	 * @return The encoded response.
+	 */
+	public static ChannelBuffer handshake(long serverKey) {
+		ChannelBuffer buffer = HANDSHAKE.copy();
+		buffer.setLong(HANDSHAKE.getPayloadOffset() + SERVER_KEY_INDEX, serverKey);
+		return buffer;
+	}
+
+	/**
+	 * Creates the response to a failed login request, which
+	 * is only the return code.
+	 * @param returnCode The return code of the login.
+	 * @return The encoded response.
+	 */
+	public static ChannelBuffer loginResponse(int returnCode) {
+		return ChannelBuffers.wrappedBuffer(new byte[] { (byte) returnCode });
+	}
+
+	/**
+	 * Creates the response to a successful login request.
+	 * @param returnCode The return code of the login.
+	 * @param crown The player's right level crown.
+	 * @param flagged Whether or not the player is flagged for botting.
+	 * @return The encoded response.
+	 */
+	public static ChannelBuffer loginResponse(int returnCode, int crown, boolean flagged) {
+		ChannelBuffer buffer = LOGIN_RESPONSE.copy();
+		int offset = LOGIN_RESPONSE.getPayloadOffset();
+		buffer.setByte(offset, returnCode);
+		buffer.setByte(offset + 1, crown);
+		buffer.setByte(offset + 2, flagged ? 1 : 0);
+		return buffer;
+	}
+
+	/**
+	 * Creates the core of the initialize packet.
+	 * @param index The player's index.
+	 * @return The encoded packet.
+	 */
+	public static ChannelBuffer initialize(int index) {
+		ChannelBuffer buffer = INITIALIZE.copy();
+		buffer.setByte(INITIALIZE.getPayloadOffset() + 1, index + 128);
+		return buffer;
+	}
+
+	/**
+	 * Gets the message which greets every player who logs in.
+	 * @return A read-only duplicate of the encoded message.
+	 */
+	public static ChannelBuffer welcomeMessage() {
+		return WELCOME_MESSAGE.duplicate();
+	}
+
+}
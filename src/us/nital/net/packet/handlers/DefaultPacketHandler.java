@@ -20,6 +20,12 @@
 
 package us.nital.net.packet.handlers;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 
 import us.nital.net.io.InBuffer;
@@ -30,6 +36,12 @@ import us.nital.net.packet.PacketDispenser;
  * This packet handler is a dummy handler which is used
  * to provide developers with information about unhandled
  * packet requests which have been received by the server.
+ * 
+ * <p>Rather than logging every request, unhandled packets are counted
+ * inside of a lock-free table indexed by operation code. The table is
+ * summarized towards the console every {@link #SUMMARY_INTERVAL} seconds
+ * (only if new packets arrived), or on demand through {@link #summarize}.</p>
+ * 
  * @author Thomas Nappo
  * @see {@link PacketDispenser} if you're unclear about how
  * the packet system works.
@@ -43,9 +55,124 @@ public class DefaultPacketHandler implements PacketHandler {
 	 */
 	private static final Logger logger = Logger.getLogger(DefaultPacketHandler.class.getName());
 
+	/**
+	 * The number of seconds between each periodic summary.
+	 */
+	private static final int SUMMARY_INTERVAL = 60;
+
+	/**
+	 * The number of operation codes which can be tracked. Operation
+	 * codes are read as an unsigned byte, so they range from 0-255.
+	 */
+	private static final int OPCODES = 256;
+
+	/**
+	 * The number of unhandled packets received for each operation code.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(OPCODES);
+
+	/**
+	 * The payload length of the first unhandled packet seen for each operation
+	 * code, plus <tt>1</tt>. A value of <tt>0</tt> means the operation code has
+	 * not yet been seen, which saves us from filling the table on construction.
+	 */
+	private final AtomicIntegerArray samples = new AtomicIntegerArray(OPCODES);
+
+	/**
+	 * The counts which were reported by the previous summary. This array is
+	 * only touched by the thread producing a summary, hence the synchronization
+	 * of {@link #summarize}.
+	 */
+	private final long[] reported = new long[OPCODES];
+
+	/**
+	 * Constructs a new default packet handler and schedules the
+	 * periodic summary of unhandled packets.
+	 */
+	public DefaultPacketHandler() {
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "UnhandledPacketSummary");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				String summary = summarize();
+				if (summary != null) {
+					logger.info(summary);
+				}
+			}
+		}, SUMMARY_INTERVAL, SUMMARY_INTERVAL, TimeUnit.SECONDS);
+	}
+
 	@Override
 	public void handle(InBuffer in) {
-		logger.info("Unhandled packet: " + in.getOpCode());
+		int opCode = in.getOpCode() & 0xFF;
+
+		/*
+		 * Counting is the only work done for the common case.
+		 */
+		counts.incrementAndGet(opCode);
+
+		/*
+		 * The first packet of every operation code has it's payload
+		 * length sampled. Only the thread winning the exchange logs it,
+		 * so this happens at most once per operation code.
+		 */
+		if (samples.get(opCode) == 0 && samples.compareAndSet(opCode, 0, in.getLength() + 1)) {
+			logger.info("First unhandled packet: " + opCode + " (length: " + in.getLength() + ")");
+		}
+	}
+
+	/**
+	 * Gets the total number of unhandled packets received for an operation code.
+	 * @param opCode The operation code.
+	 * @return The number of unhandled packets received.
+	 */
+	public long getCount(int opCode) {
+		return counts.get(opCode);
+	}
+
+	/**
+	 * Gets the payload length of the first unhandled packet received
+	 * for an operation code.
+	 * @param opCode The operation code.
+	 * @return The sampled length, or <code>-1</code> if no packet
+	 * has been received for the operation code.
+	 */
+	public int getSampleLength(int opCode) {
+		return samples.get(opCode) - 1;
+	}
+
+	/**
+	 * Summarizes the unhandled packets which were received since the
+	 * previous summary.
+	 * @return The summary, or <code>null</code> if no unhandled packets
+	 * were received since the previous summary.
+	 */
+	public synchronized String summarize() {
+		StringBuilder bldr = null;
+		for (int opCode = 0; opCode < OPCODES; opCode++) {
+			long count = counts.get(opCode);
+			long delta = count - reported[opCode];
+			if (delta == 0) {
+				continue;
+			}
+			reported[opCode] = count;
+
+			if (bldr == null) {
+				bldr = new StringBuilder("Unhandled packets since last summary:");
+			}
+			bldr.append(' ').append(opCode)
+				.append(" x").append(delta)
+				.append(" (total: ").append(count)
+				.append(", length: ").append(getSampleLength(opCode)).append(')');
+		}
+		return bldr == null ? null : bldr.toString();
 	}
 
-}
\ No newline at end of file
+}
@@ -25,11 +25,140 @@ import org.jboss.netty.buffer.ChannelBuffer;
 /**
  * A utility class which allows extra functionality to {@link ChannelBuffer}s.
  * 
+ * <p>Strings are terminated by a value of <tt>10</tt> and their characters are
+ * encoded as single bytes of the Windows-1252 character set, which is what the
+ * client uses. Strings are read and written in bulk: the terminator is found
+ * with a single search and the characters are translated through a table.</p>
+ * 
  * @author Graham Edgecombe
  * @author Thomas Nappo
  */
 public class BufferUtils {
 
+	/**
+	 * The value which terminates a string.
+	 */
+	private static final byte TERMINATOR = 10;
+
+	/**
+	 * The length of the scratch arrays which strings are translated within.
+	 * Longer strings use an array of their own.
+	 */
+	private static final int SCRATCH_LENGTH = 256;
+
+	/**
+	 * The characters of the Windows-1252 character set which differ from
+	 * ISO-8859-1, for the bytes <tt>0x80</tt> to <tt>0x9F</tt>. Bytes which
+	 * are undefined by the character set keep their ISO-8859-1 value.
+	 */
+	private static final char[] CP1252_SPECIALS = {
+		'\u20AC', '\u0081', '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+		'\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', '\u008D', '\u017D', '\u008F',
+		'\u0090', '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+		'\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', '\u009D', '\u017E', '\u0178'
+	};
+
+	/**
+	 * The character of each byte value.
+	 */
+	private static final char[] CP1252 = new char[256];
+
+	static {
+		for (int i = 0; i < CP1252.length; i++) {
+			CP1252[i] = (char) i;
+		}
+		System.arraycopy(CP1252_SPECIALS, 0, CP1252, 0x80, CP1252_SPECIALS.length);
+	}
+
+	/**
+	 * The scratch array which strings are decoded into, per thread.
+	 */
+	private static final ThreadLocal<char[]> CHAR_SCRATCH = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[SCRATCH_LENGTH];
+		}
+	};
+
+	/**
+	 * The scratch array which strings are encoded into, per thread.
+	 */
+	private static final ThreadLocal<byte[]> BYTE_SCRATCH = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[SCRATCH_LENGTH];
+		}
+	};
+
+	/**
+	 * Decodes a byte into a character.
+	 * @param b The byte.
+	 * @return The character.
+	 */
+	static char decode(int b) {
+		return CP1252[b & 0xFF];
+	}
+
+	/**
+	 * Encodes a character into a byte.
+	 * @param c The character.
+	 * @return The byte, or <tt>?</tt> if the character cannot be encoded.
+	 */
+	static byte encode(char c) {
+		if (c < 0x80 || (c >= 0xA0 && c <= 0xFF)) {
+			return (byte) c;
+		}
+		for (int i = 0; i < CP1252_SPECIALS.length; i++) {
+			if (CP1252_SPECIALS[i] == c) {
+				return (byte) (0x80 + i);
+			}
+		}
+		return '?';
+	}
+
+	/**
+	 * Decodes a string held by a buffer, without reading the buffer.
+	 * @param buf The buffer holding the string.
+	 * @param index The index of the string's first byte.
+	 * @param length The number of bytes of the string.
+	 * @return The decoded string.
+	 */
+	static String decode(ChannelBuffer buf, int index, int length) {
+		char[] chars = length <= SCRATCH_LENGTH ? CHAR_SCRATCH.get() : new char[length];
+		if (buf.hasArray()) {
+			byte[] src = buf.array();
+			int offset = buf.arrayOffset() + index;
+			for (int i = 0; i < length; i++) {
+				chars[i] = CP1252[src[offset + i] & 0xFF];
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				chars[i] = CP1252[buf.getUnsignedByte(index + i)];
+			}
+		}
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * Finds the length of the string at the reader index of a buffer.
+	 * @param buf The buffer to search.
+	 * @return The number of bytes before the terminator, or the number of
+	 * readable bytes should there be no terminator.
+	 */
+	private static int lengthOf(ChannelBuffer buf) {
+		int length = buf.bytesBefore(TERMINATOR);
+		return length < 0 ? buf.readableBytes() : length;
+	}
+
+	/**
+	 * Skips over a string which was decoded, along with it's terminator.
+	 * @param buf The buffer which was read from.
+	 * @param length The number of bytes of the string.
+	 */
+	private static void skip(ChannelBuffer buf, int length) {
+		buf.skipBytes(length < buf.readableBytes() ? length + 1 : length);
+	}
+
 	/**
 	 * Reads a string from a buffer.
 	 * @param buf The buffer to read from.
@@ -38,27 +167,27 @@ public class BufferUtils {
 	 */
 	public static String readString(ChannelBuffer buf) {
 		/*
-		 * Create a new string builder to use.
-		 */
-		StringBuilder bldr = new StringBuilder();
-		/*
-		 * This value is not set for it is used as a check
-		 * component, and then as the proper adding byte value.
-		 */
-		byte b;
-		/*
-		 * While the buffer is still reading and the next byte
-		 * value in the buffer isn't equivalent to 10 we'll append
-		 * the byte as a character towards the string builder.
-		 */
-		while (buf.readable() && (b = buf.readByte()) != 10) {
-			bldr.append((char) b);
-		}
-		/*
-		 * When alls done we return back our product by converting
-		 * the string builder into a string.
+		 * The terminator is searched for once, and then the string's
+		 * bytes are decoded in one pass.
 		 */
-		return bldr.toString();
+		int length = lengthOf(buf);
+		String s = decode(buf, buf.readerIndex(), length);
+		skip(buf, length);
+		return s;
+	}
+
+	/**
+	 * Reads a string from a buffer, reusing an equal string from a cache
+	 * should there be one.
+	 * @param buf The buffer to read from.
+	 * @param cache The cache of frequently repeated strings.
+	 * @return The product string which was read.
+	 */
+	public static String readString(ChannelBuffer buf, StringCache cache) {
+		int length = lengthOf(buf);
+		String s = cache.get(buf, buf.readerIndex(), length);
+		skip(buf, length);
+		return s;
 	}
 
 	/**
@@ -67,18 +196,121 @@ public class BufferUtils {
 	 * @param string The string to write.
 	 */
 	public static void writeString(ChannelBuffer buf, String string) {
+		int length = string.length();
+		buf.ensureWritableBytes(length + 1);
+
 		/*
-		 * For every character in the string, a byte value is
-		 * written out equivalent to the character value.
+		 * Heap buffers are encoded into directly, otherwise the
+		 * string is encoded into a scratch array and written at once.
 		 */
-		for (char c : string.toCharArray()) {
-			buf.writeByte(c);
+		byte[] dst;
+		int offset;
+		if (buf.hasArray()) {
+			dst = buf.array();
+			offset = buf.arrayOffset() + buf.writerIndex();
+		} else {
+			dst = length < SCRATCH_LENGTH ? BYTE_SCRATCH.get() : new byte[length + 1];
+			offset = 0;
 		}
+		for (int i = 0; i < length; i++) {
+			dst[offset + i] = encode(string.charAt(i));
+		}
+
 		/*
 		 * We write a value of 10 to the end of the 
 		 * buffer to signify that we're finished.
 		 */
-		buf.writeByte(10);
+		dst[offset + length] = TERMINATOR;
+
+		if (buf.hasArray()) {
+			buf.writerIndex(buf.writerIndex() + length + 1);
+		} else {
+			buf.writeBytes(dst, 0, length + 1);
+		}
+	}
+
+	/**
+	 * Writes an unsigned variable-length <code>int</code> to a buffer. Each
+	 * byte holds seven bits of the value, lowest first, with the highest bit
+	 * set upon every byte but the last. Values below <tt>128</tt> take one byte.
+	 * @param buf The buffer to write to.
+	 * @param value The value, which is treated as unsigned.
+	 */
+	public static void writeVarInt(ChannelBuffer buf, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf.writeByte(value);
+	}
+
+	/**
+	 * Reads an unsigned variable-length <code>int</code> from a buffer.
+	 * @param buf The buffer to read from.
+	 * @return The value.
+	 * @throws IllegalArgumentException should the value be longer than five bytes.
+	 */
+	public static int readVarInt(ChannelBuffer buf) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = buf.readByte();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed variable-length int.");
+	}
+
+	/**
+	 * Writes an unsigned variable-length <code>long</code> to a buffer.
+	 * @param buf The buffer to write to.
+	 * @param value The value, which is treated as unsigned.
+	 * @see {@link #writeVarInt(ChannelBuffer, int)}
+	 */
+	public static void writeVarLong(ChannelBuffer buf, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buf.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf.writeByte((int) value);
+	}
+
+	/**
+	 * Reads an unsigned variable-length <code>long</code> from a buffer.
+	 * @param buf The buffer to read from.
+	 * @return The value.
+	 * @throws IllegalArgumentException should the value be longer than ten bytes.
+	 */
+	public static long readVarLong(ChannelBuffer buf) {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = buf.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed variable-length long.");
+	}
+
+	/**
+	 * Maps a signed value onto an unsigned one, so that values near zero
+	 * (such as small differences) take few bytes as a variable-length int.
+	 * @param value The signed value.
+	 * @return The zig-zag encoded value.
+	 */
+	public static int encodeZigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * Maps a zig-zag encoded value back onto it's signed value.
+	 * @param value The zig-zag encoded value.
+	 * @return The signed value.
+	 */
+	public static int decodeZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
 	}
 
 }
@@ -21,7 +21,13 @@
 package us.nital.util;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import us.nital.model.Entity;
 
@@ -30,43 +36,114 @@ import us.nital.model.Entity;
  * by which they are stored, and using their {@link Entity#hashCode} are
  * marked by an index attribute.
  * 
+ * <p>Occupied slots are tracked by a bitset, so iterating the list only
+ * touches the slots which hold an entity. Threads other than the one
+ * maintaining the list should prefer a {@link #snapshot} over iteration.</p>
+ * 
+ * <h1>Usage</h1>
+ * <p>An index is atomically obtained through {@link #reserve}, the entity is
+ * constructed with that index and then added through {@link #addReserved}. Should
+ * the entity never be added, the index must be handed back through {@link #release}:
+ * <pre><code>int index = list.reserve();
+ * if (index &#060; 0) {
+ * 	// the list is full
+ * }
+ * Player player = new Player(index, session);
+ * if (!list.addReserved(player)) {
+ * 	list.release(index);
+ * }</code></pre></p>
+ * 
+ * <p>The list does not take any locks. All slots and bits are changed by
+ * compare-and-set operations, so any number of threads may register and
+ * unregister entities at once.</p>
+ * 
  * @author Thomas Nappo
  * @author Graham Edgecombe
  * @author Light232
  */
 public class EntityList<T extends Entity> implements Iterable<T> {
 
-	/**
-	 * This mutex object is required to lock methods for synchronization
-	 * and for verification only one thread is accessing the internal {@link #arr}
-	 * at once, making this list implementation thread safe.
-	 */
-	private final Object mutex = new Object();
-
 	/**
 	 * This internal array of entities marks contained entities by
 	 * their index within.
 	 */
-	private final Entity[] arr;
+	private final AtomicReferenceArray<T> arr;
 
 	/**
-	 * The current index mark in the list. From this value we can
-	 * determine the last set index slot in the list.
+	 * Allocates the index slots of the list, so that finding an
+	 * available slot does not require a scan of {@link #arr}.
 	 */
-	private int cursor = 0;
+	private final IndexAllocator allocator;
 
 	/**
 	 * The absolute number of elements in the list.
 	 */
-	private int size = 0;
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * The bitset of occupied slots. A set bit marks a slot
+	 * of {@link #arr} which holds an entity.
+	 */
+	private final AtomicLongArray occupied;
+
+	/**
+	 * The number of modifications made to the list. This is
+	 * used to validate snapshots without taking a lock.
+	 */
+	private final AtomicInteger modifications = new AtomicInteger();
+
+	/**
+	 * The most recent snapshot of the list.
+	 */
+	private volatile Snapshot<T> snapshot;
+
+	/**
+	 * A snapshot along with the modification count it was taken at.
+	 * @author Thomas Nappo
+	 */
+	private static final class Snapshot<T> {
+
+		/**
+		 * The modification count the snapshot was taken at.
+		 */
+		private final int modifications;
+
+		/**
+		 * The entities of the snapshot.
+		 */
+		private final List<T> entities;
+
+		/**
+		 * Constructs a new snapshot.
+		 * @param modifications The modification count the snapshot was taken at.
+		 * @param entities The entities of the snapshot.
+		 */
+		private Snapshot(int modifications, List<T> entities) {
+			this.modifications = modifications;
+			this.entities = entities;
+		}
+
+	}
+
+	/**
+	 * Gets the number of entities in the list.
+	 * @return The absolute number of elements in the list.
+	 */
+	public int size() {
+		return size.get();
+	}
 
 	/**
 	 * Converts the list to an array.
-	 * @return The internal {@link #arr} array which encapsulates
-	 * the true values of the list.
+	 * @return A copy of the internal {@link #arr} array which encapsulates
+	 * the true values of the list, with entities at their index.
 	 */
 	public Object[] toArray() {
-		return arr;
+		Object[] copy = new Object[arr.length()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = arr.get(i);
+		}
+		return copy;
 	}
 
 	/**
@@ -75,63 +152,129 @@ public class EntityList<T extends Entity> implements Iterable<T> {
 	 * be added should the list reach this capacity.
 	 */
 	public EntityList(int capacity) {
-		this.arr = new Entity[capacity];
+		this(capacity, false);
+	}
+
+	/**
+	 * Constructs a new entity list.
+	 * @param capacity The maximum capacity of the list. More entities cannot
+	 * be added should the list reach this capacity.
+	 * @param reuseDelay Whether or not removed indices are held back until
+	 * the next {@link #tick}, so that an index is not handed out twice in
+	 * the same tick.
+	 */
+	public EntityList(int capacity, boolean reuseDelay) {
+		this.arr = new AtomicReferenceArray<T>(capacity);
+		this.allocator = new IndexAllocator(capacity, reuseDelay);
+		this.occupied = new AtomicLongArray((capacity + 63) >>> 6);
 	}
 
 	/**
-	 * Adds an entity element to the list.
+	 * Atomically reserves the next available index slot in the list. The
+	 * entity which is constructed with the index must then be added through
+	 * {@link #addReserved}, or the index must be {@link #release}d.
+	 * @return The reserved index, or <code>-1</code> if the list is full.
+	 */
+	public int reserve() {
+		return allocator.reserve();
+	}
+
+	/**
+	 * Releases an index which was reserved but never used by an entity.
+	 * @param index The reserved index.
+	 */
+	public void release(int index) {
+		if (index > 0 && index < arr.length() && arr.get(index) == null) {
+			allocator.release(index);
+		}
+	}
+
+	/**
+	 * Adds an entity element to the list at it's own index, reserving
+	 * the index now.
+	 * 
+	 * <p>This is for entities which were constructed without a reservation.
+	 * The index must be available: indices which are reserved by another
+	 * caller, or which are still cooling after a removal, are rejected.
+	 * Entities constructed with an index from {@link #reserve} are added
+	 * through {@link #addReserved} instead.</p>
+	 * 
 	 * @param e The entity to add.
 	 * @return <code>true</code> if successful, <code>false</code> otherwise.
 	 */
 	public boolean add(T e) {
-		synchronized (mutex) {
-			/*
-			 * We cannot add more elements to the internal array should the
-			 * capacity be reached.
-			 */
-			if (size >= arr.length) {
-				return false;
-			}
+		int idx = e.hashCode();
+		if (!allocator.reserve(idx)) {
+			return false;
+		}
+		if (!place(idx, e)) {
+			allocator.release(idx);
+			return false;
+		}
+		return true;
+	}
 
-			/*
-			 * If the current cursor is not empty we set it to the next available slot.
-			 */
-			if (arr[cursor] != null) {
-				/*
-				 * We now set the cursor to the next available slot.
-				 */
-				if ((cursor = availableSlot()) < 0) {
-					/*
-					 * Should the available slot that the cursor was set to be less than 0
-					 * we return back false. As of the documentation provided by availableSlot(),
-					 * a return value of -1 notifies there are no available slots. Even so, arrays
-					 * cannot be accessed using negative indexes.
-					 */
-					return false;
-				}
+	/**
+	 * Adds an entity element to the list at the index which the caller
+	 * obtained for it through {@link #reserve}.
+	 * 
+	 * <p>The reservation is handed over to the entity, so the caller must
+	 * own it. Indices which are not reserved, or which are still cooling
+	 * after a removal, are rejected.</p>
+	 * 
+	 * @param e The entity to add.
+	 * @return <code>true</code> if successful, <code>false</code> otherwise.
+	 */
+	public boolean addReserved(T e) {
+		int idx = e.hashCode();
+		if (idx < 1 || idx >= arr.length() || !allocator.isReserved(idx) || allocator.isCooling(idx)) {
+			return false;
+		}
+		return place(idx, e);
+	}
 
-			}
+	/**
+	 * Places an entity within it's reserved slot.
+	 * @param idx The entity's index.
+	 * @param e The entity to place.
+	 * @return <code>true</code> if the slot was empty and now holds the entity.
+	 */
+	private boolean place(int idx, T e) {
+		/*
+		 * We set the reserved slot to the element, should it be empty.
+		 */
+		if (!arr.compareAndSet(idx, null, e)) {
+			return false;
+		}
+		IndexAllocator.setBits(occupied, idx >>> 6, 1L << idx);
 
-			/*
-			 * We set the current cursor to the next element.
-			 */
-			arr[cursor] = e;
+		/*
+		 * And now increase the maintained size of the list.
+		 */
+		size.incrementAndGet();
+		modifications.incrementAndGet();
 
-			/*
-			 * And now increase the maintained size of the list.
-			 */
-			size++;
+		/*
+		 * Finally return back true as the operation was a success.
+		 */
+		return true;
+	}
 
-			/*
-			 * Finally return back true as the operation was a success.
-			 */
-			return true;
-		}
+	/**
+	 * Gets the number of index slots of the list.
+	 * @return The maximum capacity of the list.
+	 */
+	public int capacity() {
+		return arr.length();
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Gets the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity, or <code>null</code> if the slot is empty.
+	 */
 	public T get(int index) {
-		return (T) arr[index];
+		return arr.get(index);
 	}
 
 	/**
@@ -143,10 +286,12 @@ public class EntityList<T extends Entity> implements Iterable<T> {
 	 * be found in the array.
 	 */
 	public int getIndex(T e) {
-		for (int i = 1; i < arr.length; i++) {
-			if (arr[i] == e)
-				return i;
-		}
+		/*
+		 * Entities are always stored at their own index.
+		 */
+		int idx = e.hashCode();
+		if (idx > 0 && idx < arr.length() && arr.get(idx) == e)
+			return idx;
 		return -1;
 	}
 
@@ -156,63 +301,217 @@ public class EntityList<T extends Entity> implements Iterable<T> {
 	 * @return <code>true</code> if successful, <code>false</code> otherwise.
 	 */
 	public boolean remove(T e) {
-		synchronized (mutex) {
-			/*
-			 * We retrieve the index of the element. This value is directly
-			 * determined through the entity's hash code.
-			 */
-			int idx = e.hashCode();
+		/*
+		 * We retrieve the index of the element. This value is directly
+		 * determined through the entity's hash code.
+		 */
+		int idx = e.hashCode();
 
-			/*
-			 * If that retrieval's value is less than one their hash code value may be
-			 * incorrect. This is why a double check performs in the following block.
-			 */
-			if (idx < 0) {
-				/*
-				 * We set the index to a retrieval from the getIndex(T) method.
-				 */
-				if ((idx = getIndex(e)) < 0)
-					/*
-					 * Should this value still not be useable, we return false to
-					 * notify the calling value that the removal attempt failed.
-					 */
-					return false;
-			}
+		/*
+		 * Should the index be out of range or the slot not hold the entity
+		 * we return false to notify the calling value that the removal attempt
+		 * failed. Only one thread can win the exchange of the slot.
+		 */
+		if (idx < 1 || idx >= arr.length() || !arr.compareAndSet(idx, e, null)) {
+			return false;
+		}
+		IndexAllocator.clearBits(occupied, idx >>> 6, 1L << idx);
 
-			/*
-			 * Otherwise we just set the determined index to null in the internal array.
-			 */
-			arr[idx] = null;
+		/*
+		 * The slot is handed back to the allocator.
+		 */
+		allocator.release(idx);
 
-			/*
-			 * And decrease the size.
-			 */
-			size--;
+		/*
+		 * And decrease the size.
+		 */
+		size.decrementAndGet();
+		modifications.incrementAndGet();
 
-			/*
-			 * The operation was successful, so a value of true is returned.
-			 */
-			return true;
-		}
+		/*
+		 * The operation was successful, so a value of true is returned.
+		 */
+		return true;
 	}
 
 	/**
 	 * Retrieves the next available index slot in the list.
+	 * 
+	 * <p>The slot is not reserved; another thread may take it before the
+	 * caller does. Use {@link #reserve} to obtain an index for an entity.</p>
+	 * 
 	 * @return The next available index, or <code>-1</code> if
 	 * there no open slot could be found.
 	 */
 	public int availableSlot() {
-		for (int i = 1; i < arr.length; i++) {
-			if (arr[i] == null)
-				return i;
+		return allocator.peek();
+	}
+
+	/**
+	 * Makes the indices of entities which were removed since
+	 * the previous tick available again. This only has effect
+	 * should the list have been constructed with a reuse delay.
+	 */
+	public void tick() {
+		allocator.tick();
+	}
+
+	/**
+	 * Visits every entity in the list without creating an iterator.
+	 * @param visitor The visitor to call for each entity.
+	 */
+	public void visit(EntityVisitor<? super T> visitor) {
+		visit(visitor, null);
+	}
+
+	/**
+	 * Visits every entity in the list, except for one, without
+	 * creating an iterator.
+	 * @param visitor The visitor to call for each entity.
+	 * @param except The entity which should not be visited, for
+	 * example the player whom other players are updated for.
+	 */
+	public void visit(EntityVisitor<? super T> visitor, T except) {
+		for (int word = 0; word < occupied.length(); word++) {
+			long bits = occupied.get(word);
+			while (bits != 0) {
+				int idx = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				T e = arr.get(idx);
+				if (e != null && e != except) {
+					visitor.visit(e);
+				}
+			}
 		}
-		return -1;
 	}
 
+	/**
+	 * Takes a snapshot of the list. The snapshot is a dense, unmodifiable
+	 * list of the entities at the time it was taken, and is safe to be used
+	 * by any thread (for example for metrics or saving).
+	 * 
+	 * <p>Snapshots are shared until the list is modified, so taking a
+	 * snapshot of an unchanged list is free. A snapshot which is disturbed
+	 * by a modification while being taken is taken again.</p>
+	 * 
+	 * @return A snapshot of the entities in the list.
+	 */
 	@SuppressWarnings("unchecked")
+	public List<T> snapshot() {
+		Snapshot<T> s = snapshot;
+		int mod = modifications.get();
+		if (s != null && s.modifications == mod) {
+			return s.entities;
+		}
+		for (;;) {
+			Entity[] dense = new Entity[size.get()];
+			int i = 0;
+			boolean overflow = false;
+			for (int word = 0; word < occupied.length() && !overflow; word++) {
+				long bits = occupied.get(word);
+				while (bits != 0) {
+					T e = arr.get((word << 6) + Long.numberOfTrailingZeros(bits));
+					bits &= bits - 1;
+					if (e == null) {
+						continue;
+					}
+					if (i == dense.length) {
+						overflow = true;
+						break;
+					}
+					dense[i++] = e;
+				}
+			}
+
+			/*
+			 * The snapshot is only consistent if nothing
+			 * was modified while it was being taken.
+			 */
+			int after = modifications.get();
+			if (!overflow && after == mod) {
+				if (i != dense.length) {
+					dense = Arrays.copyOf(dense, i);
+				}
+				s = new Snapshot<T>(mod, Collections.unmodifiableList((List<T>) Arrays.asList(dense)));
+				snapshot = s;
+				return s.entities;
+			}
+			mod = after;
+		}
+	}
+
+	/**
+	 * Returns an iterator which only walks occupied slots of the list.
+	 * 
+	 * <p>The iterator never yields <code>null</code>. Entities which are
+	 * added or removed during iteration may or may not be visited.</p>
+	 */
 	@Override
 	public Iterator<T> iterator() {
-		return (Iterator<T>) Arrays.asList(arr).iterator();
+		return new EntityIterator();
+	}
+
+	/**
+	 * An iterator which walks the bits of the {@link #occupied} bitset.
+	 * @author Thomas Nappo
+	 */
+	private final class EntityIterator implements Iterator<T> {
+
+		/**
+		 * The word of the bitset which is being walked.
+		 */
+		private int word = 0;
+
+		/**
+		 * The remaining bits of the current word.
+		 */
+		private long bits = occupied.length() > 0 ? occupied.get(0) : 0;
+
+		/**
+		 * The next entity to return, or <code>null</code>.
+		 */
+		private T next;
+
+		/**
+		 * The entity most recently returned.
+		 */
+		private T last;
+
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				while (bits == 0) {
+					if (++word >= occupied.length()) {
+						return false;
+					}
+					bits = occupied.get(word);
+				}
+				int idx = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				next = arr.get(idx);
+			}
+			return true;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			next = null;
+			return last;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			EntityList.this.remove(last);
+			last = null;
+		}
+
 	}
 
-}
\ No newline at end of file
+}
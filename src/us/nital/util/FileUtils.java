@@ -21,6 +21,13 @@
 package us.nital.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -34,82 +41,265 @@ import org.jboss.netty.buffer.ChannelBuffers;
 public class FileUtils {
 
 	/**
-	 * The size of the buffer payload capacities for the files
-	 * we are dealing with.
+	 * The number of bytes from which files are mapped into memory
+	 * rather than read.
 	 */
-	private static final int BUFFER_SIZE = 1024;
+	private static final long MAPPED_THRESHOLD = 1024 * 1024;
 
 	/**
-	 * Creates a channel buffer payload from a file.
+	 * Creates a channel buffer payload from a file. Files which are at
+	 * least {@link #MAPPED_THRESHOLD} bytes are mapped into memory as
+	 * {@link #mapBufferFromFile(String)} does.
 	 * @param name The name of the disk file.
 	 * @return The builded {@link ChannelBuffer} which contains the
 	 * binary data which was read from the file.
 	 * @throws IOException Should any I/O exceptions occur.
 	 */
 	public static ChannelBuffer buildBufferFromFile(String name) throws IOException {
-		/*
-		 * We create a new input stream equivalent to a
-		 * construction using a file input stream towards
-		 * the file name entered in the parameters.
-		 */
-		InputStream in = new FileInputStream(name);
-
-		/*
-		 * Afterwards a new dynamic buffer is instantized.
-		 */
-		ChannelBuffer build = ChannelBuffers.dynamicBuffer();
+		FileChannel channel = new FileInputStream(name).getChannel();
+		try {
+			long size = channel.size();
+			if (size >= MAPPED_THRESHOLD) {
+				return map(channel, size);
+			}
 
-		/*
-		 * An array of data bytes with a capacity equivalent 
-		 * to the constant {BUFFER_SIZE} is created.
-		 * 
-		 * This array will be used to transfer the actual
-		 * buffer's data towards.
-		 */
-		byte[] data = new byte[BUFFER_SIZE];
-
-		/*
-		 * This integer is a mark value. It is used by the
-		 * while loop below.
-		 */
-		int read;
+			/*
+			 * The buffer is sized from the file's length, so the file is
+			 * read straight into it without any copies or reallocations.
+			 */
+			ByteBuffer data = ByteBuffer.allocate((int) size);
+			while (data.hasRemaining()) {
+				if (channel.read(data) == -1) {
+					throw new EOFException("File ended early: " + name);
+				}
+			}
+			return ChannelBuffers.wrappedBuffer(data.array());
+		} finally {
+			channel.close();
+		}
+	}
 
-		/*
-		 * While the next piece of information inside the
-		 * is not equivalent to -1 we transfer the data towards
-		 * the array which was created at preceeding command.
-		 */
-		while ((read = in.read(data, 0, BUFFER_SIZE)) != -1) {
+	/**
+	 * Creates a channel buffer payload which is a read-only mapping of a
+	 * file into memory. The file's data is loaded as it is accessed, and
+	 * is shared with the page cache rather than copied onto the heap.
+	 * @param name The name of the disk file.
+	 * @return A {@link ChannelBuffer} which wraps the mapping.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public static ChannelBuffer mapBufferFromFile(String name) throws IOException {
+		FileChannel channel = new FileInputStream(name).getChannel();
+		try {
+			return map(channel, channel.size());
+		} finally {
 			/*
-			 * We then transfer the information towards that array.
+			 * A mapping remains valid after it's channel is closed.
 			 */
-			build.writeBytes(data, 0, read);
+			channel.close();
 		}
+	}
 
-		/*
-		 * When all is done we close the input stream to prevent
-		 * later usage along with allowing another stream to be
-		 * opened towards the file.
-		 */
-		in.close();
+	/**
+	 * Creates a channel buffer payload from a file upon another thread.
+	 * @param name The name of the disk file.
+	 * @return The future of the buffer, which is built as
+	 * {@link #buildBufferFromFile(String)} builds it.
+	 */
+	public static Future<ChannelBuffer> buildBufferFromFileAsync(final String name) {
+		return FutureManager.submit(new Callable<ChannelBuffer>() {
+			@Override
+			public ChannelBuffer call() throws IOException {
+				return buildBufferFromFile(name);
+			}
+		});
+	}
 
-		/*
-		 * The builded channel buffer is returned back as a product.
-		 */
-		return build;
+	/**
+	 * Maps a file into memory.
+	 * @param channel The file's channel.
+	 * @param size The number of bytes of the file.
+	 * @return A {@link ChannelBuffer} which wraps the mapping.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private static ChannelBuffer map(FileChannel channel, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("File is too large to map: " + size);
+		}
+		return ChannelBuffers.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
 	}
 
 	/**
-	 * Writes a {@link ChannelBuffer} to a disk file.
+	 * Writes a {@link ChannelBuffer} to a disk file. The file is
+	 * replaced atomically, so that it either holds it's old data or
+	 * all of the buffer's readable bytes, even should the server crash
+	 * while it is being written.
 	 * @param name The name of the disk file.
 	 * @param buf The buffer which is the container of the
 	 * binary data to write.
+	 * @throws IOException Should any I/O exceptions occur.
 	 */
 	public static void writeBufferToFile(String name, ChannelBuffer buf) throws IOException {
-		OutputStream out = new FileOutputStream(name);
-		out.write(buf.array(), 0, buf.readableBytes());
-		out.flush();
-		out.close();
+		writeBuffersToFiles(Collections.singletonMap(new File(name), buf));
+	}
+
+	/**
+	 * Writes many {@link ChannelBuffer}s to their disk files, replacing
+	 * each file atomically as {@link #writeBufferToFile(String, ChannelBuffer)}
+	 * does. Every file is written and forced to the disk before any of them
+	 * are replaced, so that the batch costs one pass of renames.
+	 * @param files The buffers to write by their disk files.
+	 * @throws IOException Should any I/O exceptions occur, in which case
+	 * none of the files which were not yet replaced are touched.
+	 */
+	public static void writeBuffersToFiles(Map<File, ChannelBuffer> files) throws IOException {
+		Map<File, File> readies = new LinkedHashMap<File, File>();
+		try {
+			/*
+			 * Each buffer is first written towards a temporary file beside
+			 * it's destination. Once it has been forced to the disk, it is
+			 * renamed to a ready file, so that only files which are known to
+			 * be complete are ever recovered by {@link #recoverFile}.
+			 */
+			for (Map.Entry<File, ChannelBuffer> entry : files.entrySet()) {
+				File file = entry.getKey();
+				File temporary = getTemporaryFile(file);
+				File ready = getReadyFile(file);
+
+				/*
+				 * A ready file which was left behind is moved into place
+				 * should the destination be missing, as it holds the latest
+				 * complete data until this one is ready. Otherwise it is stale.
+				 */
+				recoverFile(file);
+				if (ready.exists() && !ready.delete()) {
+					throw new IOException("Could not delete " + ready);
+				}
+
+				writeTemporaryFile(temporary, entry.getValue());
+				if (!temporary.renameTo(ready)) {
+					throw new IOException("Could not rename " + temporary + " to " + ready);
+				}
+				readies.put(file, ready);
+			}
+
+			/*
+			 * Once all of the data is on the disk the destinations
+			 * are replaced.
+			 */
+			for (Map.Entry<File, File> entry : readies.entrySet()) {
+				replace(entry.getValue(), entry.getKey());
+			}
+		} finally {
+			/*
+			 * Temporary files are never complete as far as we know, so any
+			 * left behind by a failure are removed. Ready files are removed
+			 * as well, unless their destination is missing in which case
+			 * they hold the only copy of the data.
+			 */
+			for (File file : files.keySet()) {
+				File temporary = getTemporaryFile(file);
+				if (temporary.exists()) {
+					temporary.delete();
+				}
+				File ready = readies.get(file);
+				if (ready != null && ready.exists() && file.exists()) {
+					ready.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a disk file which is written by {@link #writeBufferToFile}
+	 * exists. Should the file be missing while it's ready file exists, a
+	 * replace was interrupted after the file was deleted, and the ready file
+	 * (which was completely written and forced to the disk) is moved into place.
+	 * Temporary files are never recovered, as they may be incomplete.
+	 * @param file The disk file.
+	 * @return <code>true</code> if the file exists, or was recovered.
+	 * @throws IOException Should the ready file fail to be moved.
+	 */
+	public static boolean recoverFile(File file) throws IOException {
+		if (file.exists()) {
+			return true;
+		}
+		File ready = getReadyFile(file);
+		if (!ready.exists()) {
+			return false;
+		}
+		if (!ready.renameTo(file) && !file.exists()) {
+			throw new IOException("Could not recover " + file + " from " + ready);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the temporary file which a disk file is written towards
+	 * before being replaced.
+	 * @param file The disk file.
+	 * @return The temporary file, which is within the same directory.
+	 */
+	private static File getTemporaryFile(File file) {
+		return new File(file.getPath() + ".tmp");
+	}
+
+	/**
+	 * Gets the file which a temporary file is renamed to once it has
+	 * been completely written and forced to the disk.
+	 * @param file The disk file.
+	 * @return The ready file, which is within the same directory.
+	 */
+	private static File getReadyFile(File file) {
+		return new File(file.getPath() + ".ready");
+	}
+
+	/**
+	 * Writes the readable bytes of a buffer towards a temporary file and
+	 * forces them to the disk. The buffer's indices are not modified.
+	 * @param temporary The temporary file.
+	 * @param buf The buffer to write.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private static void writeTemporaryFile(File temporary, ChannelBuffer buf) throws IOException {
+		FileChannel channel = new FileOutputStream(temporary).getChannel();
+		try {
+			/*
+			 * The buffer's NIO buffers are written with a gathering write,
+			 * which reads them in place whatever the buffer's kind.
+			 */
+			ByteBuffer[] buffers = buf.toByteBuffers();
+			long remaining = buf.readableBytes();
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Replaces a disk file with a ready file.
+	 * @param ready The ready file.
+	 * @param file The disk file to replace.
+	 * @throws IOException Should the file fail to be replaced.
+	 */
+	private static void replace(File ready, File file) throws IOException {
+		if (ready.renameTo(file)) {
+			return;
+		}
+
+		/*
+		 * Some platforms (Windows) will not rename over an existing file,
+		 * in which case it is deleted first. This leaves a short window
+		 * without the file, but the ready file still holds the data.
+		 */
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Could not delete " + file);
+		}
+		if (!ready.renameTo(file)) {
+			throw new IOException("Could not rename " + ready + " to " + file);
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -20,10 +20,47 @@
 
 package us.nital.util;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * TODO
+ * Manages the threads which complete blocking work (such as reading disk
+ * files) on behalf of other threads, which are handed a {@link Future}
+ * of the work's result instead of waiting for it.
  * @author Thomas Nappo
  */
 public final class FutureManager {
 
-}
\ No newline at end of file
+	/**
+	 * The number of threads which complete work.
+	 */
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The executor which completes work.
+	 */
+	private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Future-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Submits work to be completed.
+	 * @param task The work to complete.
+	 * @return The future of the work's result.
+	 */
+	public static <T> Future<T> submit(Callable<T> task) {
+		return executor.submit(task);
+	}
+
+}
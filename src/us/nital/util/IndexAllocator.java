@@ -0,0 +1,291 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocates the index slots of an {@link EntityList} using a bitset of
+ * reserved indices.
+ * 
+ * <p>Searching starts at a hint word which usually points at (or before) the
+ * most recently freed index, so that a reservation usually inspects a single
+ * word of <tt>64</tt> indices. Releasing an index is a single bit operation.</p>
+ * 
+ * <p>An allocator may be constructed with a reuse delay. Released indices are
+ * then kept <i>cooling</i> until the next {@link #tick}, so that an index is not
+ * handed out again during the same tick it was freed. Should the allocator run
+ * out of indices it reclaims the cooling indices early rather than failing.</p>
+ * 
+ * <p>The allocator is lock-free. Bits are only ever changed by compare-and-set
+ * operations on their word, so any number of threads may reserve and release
+ * indices at once and no index is ever handed out to two threads.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public class IndexAllocator {
+
+	/**
+	 * The number of indices the allocator manages.
+	 */
+	private final int capacity;
+
+	/**
+	 * The bitset of reserved indices. A set bit marks a reserved index.
+	 */
+	private final AtomicLongArray reserved;
+
+	/**
+	 * The bitset of released indices which are waiting for the next tick.
+	 */
+	private final AtomicLongArray cooling;
+
+	/**
+	 * Whether or not released indices are held back until the next tick.
+	 */
+	private final boolean reuseDelay;
+
+	/**
+	 * The word at which the next search starts. This is only a hint, as
+	 * racing threads may move it past a free index; a failed search from
+	 * the hint is therefore retried from the first word.
+	 */
+	private volatile int hint = 0;
+
+	/**
+	 * The number of indices which are currently cooling.
+	 */
+	private final AtomicInteger coolingCount = new AtomicInteger();
+
+	/**
+	 * Constructs a new index allocator.
+	 * 
+	 * <p>Index <tt>0</tt> is never handed out, as entity lists
+	 * do not use the first slot.</p>
+	 * 
+	 * @param capacity The number of indices the allocator manages.
+	 * @param reuseDelay Whether or not released indices are held
+	 * back until the next {@link #tick}.
+	 */
+	public IndexAllocator(int capacity, boolean reuseDelay) {
+		this.capacity = capacity;
+		this.reuseDelay = reuseDelay;
+		this.reserved = new AtomicLongArray((capacity + 63) >>> 6);
+		this.cooling = new AtomicLongArray(reserved.length());
+
+		/*
+		 * The first index is reserved, along with the bits of
+		 * the last word which lie beyond the capacity.
+		 */
+		setBits(reserved, 0, 1L);
+		if ((capacity & 63) != 0) {
+			setBits(reserved, reserved.length() - 1, -1L << (capacity & 63));
+		}
+	}
+
+	/**
+	 * Constructs a new index allocator without a reuse delay.
+	 * @param capacity The number of indices the allocator manages.
+	 */
+	public IndexAllocator(int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * Gets the next index which would be reserved, without reserving it.
+	 * 
+	 * <p>Another thread may reserve the index before the caller does, so
+	 * this should only be used for informational purposes. Use {@link #reserve}
+	 * to actually obtain an index.</p>
+	 * 
+	 * @return The next available index, or <code>-1</code> if there
+	 * is no available index.
+	 */
+	public int peek() {
+		int idx = find();
+		if (idx < 0 && coolingCount.get() > 0) {
+			tick();
+			idx = find();
+		}
+		return idx;
+	}
+
+	/**
+	 * Atomically reserves the next available index.
+	 * @return The reserved index, or <code>-1</code> if there
+	 * is no available index.
+	 */
+	public int reserve() {
+		for (;;) {
+			int idx = peek();
+			if (idx < 0) {
+				return -1;
+			}
+			if (setBits(reserved, idx >>> 6, 1L << idx)) {
+				return idx;
+			}
+			/*
+			 * Another thread reserved the index first, so we search again.
+			 */
+		}
+	}
+
+	/**
+	 * Atomically reserves a specific index.
+	 * @param idx The index to reserve.
+	 * @return <code>true</code> if the index was available and is now
+	 * reserved, <code>false</code> otherwise.
+	 */
+	public boolean reserve(int idx) {
+		if (idx < 1 || idx >= capacity) {
+			return false;
+		}
+		return setBits(reserved, idx >>> 6, 1L << idx);
+	}
+
+	/**
+	 * Releases a reserved index.
+	 * @param idx The index to release.
+	 */
+	public void release(int idx) {
+		if (idx < 1 || idx >= capacity || !isReserved(idx) || isCooling(idx)) {
+			return;
+		}
+		int word = idx >>> 6;
+		long bit = 1L << idx;
+		if (reuseDelay) {
+			if (setBits(cooling, word, bit)) {
+				coolingCount.incrementAndGet();
+			}
+		} else if (clearBits(reserved, word, bit) && word < hint) {
+			hint = word;
+		}
+	}
+
+	/**
+	 * Checks whether or not an index is reserved. Cooling
+	 * indices are still considered to be reserved.
+	 * @param idx The index to check.
+	 * @return <code>true</code> if the index is reserved.
+	 */
+	public boolean isReserved(int idx) {
+		return (reserved.get(idx >>> 6) & (1L << idx)) != 0;
+	}
+
+	/**
+	 * Checks whether or not an index is cooling, having been released
+	 * since the previous tick.
+	 * @param idx The index to check.
+	 * @return <code>true</code> if the index is cooling.
+	 */
+	public boolean isCooling(int idx) {
+		return (cooling.get(idx >>> 6) & (1L << idx)) != 0;
+	}
+
+	/**
+	 * Makes all cooling indices available again.
+	 */
+	public void tick() {
+		if (coolingCount.get() == 0) {
+			return;
+		}
+		for (int word = 0; word < cooling.length(); word++) {
+			long bits = cooling.getAndSet(word, 0);
+			if (bits != 0) {
+				clearBits(reserved, word, bits);
+				coolingCount.addAndGet(-Long.bitCount(bits));
+				if (word < hint) {
+					hint = word;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the lowest available index, starting at the hint word.
+	 * @return The index, or <code>-1</code> if there is no available index.
+	 */
+	private int find() {
+		int start = hint;
+		int idx = find(start);
+		if (idx < 0 && start > 0) {
+			idx = find(0);
+		}
+		return idx;
+	}
+
+	/**
+	 * Finds the lowest available index from a word onwards.
+	 * @param from The word to start from.
+	 * @return The index, or <code>-1</code> if there is no available index.
+	 */
+	private int find(int from) {
+		for (int word = from; word < reserved.length(); word++) {
+			long free = ~reserved.get(word);
+			if (free != 0) {
+				hint = word;
+				return (word << 6) + Long.numberOfTrailingZeros(free);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Atomically sets bits of a word.
+	 * @param bitset The bitset.
+	 * @param word The index of the word.
+	 * @param bits The bits to set.
+	 * @return <code>true</code> if none of the bits were set beforehand,
+	 * <code>false</code> if any were (in which case nothing is changed).
+	 */
+	static boolean setBits(AtomicLongArray bitset, int word, long bits) {
+		for (;;) {
+			long value = bitset.get(word);
+			if ((value & bits) != 0) {
+				return false;
+			}
+			if (bitset.compareAndSet(word, value, value | bits)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Atomically clears bits of a word.
+	 * @param bitset The bitset.
+	 * @param word The index of the word.
+	 * @param bits The bits to clear.
+	 * @return <code>true</code> if any of the bits were set beforehand.
+	 */
+	static boolean clearBits(AtomicLongArray bitset, int word, long bits) {
+		for (;;) {
+			long value = bitset.get(word);
+			if ((value & bits) == 0) {
+				return false;
+			}
+			if (bitset.compareAndSet(word, value, value & ~bits)) {
+				return true;
+			}
+		}
+	}
+
+}
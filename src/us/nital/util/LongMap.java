@@ -0,0 +1,310 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent open-addressing map which associates primitive <code>long</code>
+ * keys with values, so that lookups neither box their key nor allocate.
+ * 
+ * <p>Lookups never lock. Modifications are synchronized on the map, which keeps
+ * them simple while they remain rare in comparison to lookups (for example
+ * players logging in and out versus players being looked up by name).</p>
+ * 
+ * <p>The key <tt>0</tt> marks an empty slot and therefore cannot be used.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public class LongMap<V> {
+
+	/**
+	 * The key which marks an empty slot.
+	 */
+	private static final long EMPTY = 0L;
+
+	/**
+	 * The smallest capacity of a table.
+	 */
+	private static final int MINIMUM_CAPACITY = 16;
+
+	/**
+	 * A table of slots. Removed values leave their key in the table (as a
+	 * slot with a <code>null</code> value) until the table is rebuilt.
+	 * @author Thomas Nappo
+	 */
+	private static final class Table<V> {
+
+		/**
+		 * The key of each slot.
+		 */
+		private final AtomicLongArray keys;
+
+		/**
+		 * The value of each slot.
+		 */
+		private final AtomicReferenceArray<V> values;
+
+		/**
+		 * The mask used to wrap a slot index.
+		 */
+		private final int mask;
+
+		/**
+		 * Constructs a new table.
+		 * @param capacity The number of slots, which must be a power of two.
+		 */
+		private Table(int capacity) {
+			this.keys = new AtomicLongArray(capacity);
+			this.values = new AtomicReferenceArray<V>(capacity);
+			this.mask = capacity - 1;
+		}
+
+	}
+
+	/**
+	 * The current table. Readers always read this field once and then
+	 * work on that table alone.
+	 */
+	private volatile Table<V> table;
+
+	/**
+	 * The number of values in the map.
+	 */
+	private volatile int size = 0;
+
+	/**
+	 * The number of slots which hold a key, including removed ones.
+	 */
+	private int used = 0;
+
+	/**
+	 * Constructs a new map.
+	 * @param expected The expected number of values.
+	 */
+	public LongMap(int expected) {
+		this.table = new Table<V>(capacityFor(expected));
+	}
+
+	/**
+	 * Gets the number of values in the map.
+	 * @return The number of values.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the value associated with a key.
+	 * @param key The key.
+	 * @return The associated value, or <code>null</code> if there is none.
+	 */
+	public V get(long key) {
+		Table<V> t = table;
+		for (int idx = hash(key) & t.mask; ; idx = (idx + 1) & t.mask) {
+			long k = t.keys.get(idx);
+			if (k == key) {
+				return t.values.get(idx);
+			}
+			if (k == EMPTY) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Associates a value with a key, should the key not be associated with a value.
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The value which is already associated with the key, or <code>null</code>
+	 * if the value was associated.
+	 */
+	public synchronized V putIfAbsent(long key, V value) {
+		return put(key, value, true);
+	}
+
+	/**
+	 * Associates a value with a key.
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The value previously associated with the key, or <code>null</code>.
+	 */
+	public synchronized V put(long key, V value) {
+		return put(key, value, false);
+	}
+
+	/**
+	 * Removes the value associated with a key.
+	 * @param key The key.
+	 * @return The removed value, or <code>null</code> if there was none.
+	 */
+	public synchronized V remove(long key) {
+		Table<V> t = table;
+		int idx = find(t, key);
+		if (idx < 0) {
+			return null;
+		}
+		V old = t.values.getAndSet(idx, null);
+		if (old != null) {
+			size--;
+		}
+		return old;
+	}
+
+	/**
+	 * Removes a key's association, only if it is associated with a specific value.
+	 * @param key The key.
+	 * @param value The value.
+	 * @return <code>true</code> if the association was removed.
+	 */
+	public synchronized boolean remove(long key, V value) {
+		Table<V> t = table;
+		int idx = find(t, key);
+		if (idx < 0 || !t.values.compareAndSet(idx, value, null)) {
+			return false;
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Associates a value with a key. The caller must hold the lock of the map.
+	 * @param key The key.
+	 * @param value The value.
+	 * @param onlyIfAbsent Whether or not an existing association is kept.
+	 * @return The existing value, or <code>null</code>.
+	 */
+	private V put(long key, V value, boolean onlyIfAbsent) {
+		if (key == EMPTY) {
+			throw new IllegalArgumentException("Key must not be 0.");
+		}
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		Table<V> t = table;
+		int idx = hash(key) & t.mask;
+		for (;;) {
+			long k = t.keys.get(idx);
+			if (k == key) {
+				V old = t.values.get(idx);
+				if (old == null || !onlyIfAbsent) {
+					t.values.set(idx, value);
+					if (old == null) {
+						size++;
+					}
+				}
+				return old;
+			}
+			if (k == EMPTY) {
+				break;
+			}
+			idx = (idx + 1) & t.mask;
+		}
+
+		/*
+		 * The value is published before the key, so that a reader
+		 * which finds the key also finds the value.
+		 */
+		t.values.set(idx, value);
+		t.keys.set(idx, key);
+		size++;
+
+		/*
+		 * Tables are kept at most three quarters full, so that probing
+		 * always terminates at an empty slot.
+		 */
+		if (++used > (t.mask + 1) - ((t.mask + 1) >>> 2)) {
+			rebuild();
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the slot of a key.
+	 * @param t The table to search.
+	 * @param key The key.
+	 * @return The slot, or <code>-1</code> if the key is not in the table.
+	 */
+	private static int find(Table<?> t, long key) {
+		for (int idx = hash(key) & t.mask; ; idx = (idx + 1) & t.mask) {
+			long k = t.keys.get(idx);
+			if (k == key) {
+				return idx;
+			}
+			if (k == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the table without removed slots, growing it should it be needed.
+	 * The new table is filled before it is published, so readers either see
+	 * the old or the new table in whole.
+	 */
+	private void rebuild() {
+		Table<V> t = table;
+		Table<V> n = new Table<V>(capacityFor(size));
+		int count = 0;
+		for (int i = 0; i <= t.mask; i++) {
+			V value = t.values.get(i);
+			if (value == null) {
+				continue;
+			}
+			long key = t.keys.get(i);
+			int idx = hash(key) & n.mask;
+			while (n.keys.get(idx) != EMPTY) {
+				idx = (idx + 1) & n.mask;
+			}
+			n.values.set(idx, value);
+			n.keys.set(idx, key);
+			count++;
+		}
+		used = count;
+		table = n;
+	}
+
+	/**
+	 * Calculates the table capacity for a number of values, so that
+	 * the table is at most half full.
+	 * @param expected The number of values.
+	 * @return The capacity, which is a power of two.
+	 */
+	private static int capacityFor(int expected) {
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity < expected * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Spreads the bits of a key.
+	 * @param key The key.
+	 * @return The hash of the key.
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -20,22 +20,103 @@
 
 package us.nital.util;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import us.nital.Constants;
 
 /**
  * This utility helps with name conversions and the sort.
  * 
+ * <p>Validation and encoding are driven by a precomputed table of character
+ * classes, so neither compiles a regular expression nor creates intermediate
+ * strings. Both can work directly upon the raw bytes of a buffer.</p>
+ * 
  * @author Graham Edgecombe
  */
 public class NameUtils {
 
+	/**
+	 * The class of a character which may not be used in a name.
+	 */
+	private static final byte INVALID = -1;
+
+	/**
+	 * The maximum number of characters which are encoded into a long.
+	 */
+	private static final int MAXIMUM_LENGTH = 12;
+
+	/**
+	 * The class of each character below <tt>256</tt>. Letters (of either case)
+	 * and digits hold their base-37 value, spaces and underscores hold <tt>0</tt>
+	 * and all other characters are {@link #INVALID}.
+	 */
+	private static final byte[] CHAR_CLASSES = new byte[256];
+
+	static {
+		for (int c = 0; c < CHAR_CLASSES.length; c++) {
+			if (c >= 'a' && c <= 'z') CHAR_CLASSES[c] = (byte) (1 + c - 'a');
+			else if (c >= 'A' && c <= 'Z') CHAR_CLASSES[c] = (byte) (1 + c - 'A');
+			else if (c >= '0' && c <= '9') CHAR_CLASSES[c] = (byte) (27 + c - '0');
+			else if (c == '_' || c == ' ') CHAR_CLASSES[c] = 0;
+			else CHAR_CLASSES[c] = INVALID;
+		}
+	}
+
+	/**
+	 * Gets the class of a character.
+	 * @param c The character.
+	 * @return The character's base-37 value, or {@link #INVALID}.
+	 */
+	private static int classOf(int c) {
+		return c < CHAR_CLASSES.length ? CHAR_CLASSES[c] : INVALID;
+	}
+
 	/**
 	 * Checks if a name is valid.
+	 * 
+	 * <p>A valid name is from <tt>1</tt> to {@link #MAXIMUM_LENGTH} characters
+	 * long and neither begins nor ends with a space or underscore, so that it is
+	 * encoded by {@link #nameToLong} into a value which no other name (besides
+	 * those which differ only in case, or in spaces for underscores) shares, and
+	 * which is never <tt>0</tt>.</p>
+	 * 
 	 * @param s The name.
 	 * @return <code>true</code> if so, <code>false</code> if not.
 	 */
-	public static boolean isValidName(String s) {
-		return formatNameForProtocol(s).matches("[a-z0-9_]+");
+	public static boolean isValidName(CharSequence s) {
+		int length = s.length();
+		if (length < 1 || length > MAXIMUM_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (classOf(s.charAt(i)) == INVALID) {
+				return false;
+			}
+		}
+		return classOf(s.charAt(0)) != 0 && classOf(s.charAt(length - 1)) != 0;
+	}
+
+	/**
+	 * Checks if a name which is held by a buffer is valid, without
+	 * reading the buffer or creating a string.
+	 * @param buf The buffer holding the name.
+	 * @param index The index of the name's first byte.
+	 * @param length The number of bytes of the name, which may be
+	 * negative should the name's terminator not have been found.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 * @see {@link #isValidName(CharSequence)}
+	 */
+	public static boolean isValidName(ChannelBuffer buf, int index, int length) {
+		if (length < 1 || length > MAXIMUM_LENGTH) {
+			return false;
+		}
+		for (int i = index; i < index + length; i++) {
+			if (CHAR_CLASSES[buf.getUnsignedByte(i)] == INVALID) {
+				return false;
+			}
+		}
+		return CHAR_CLASSES[buf.getUnsignedByte(index)] != 0
+				&& CHAR_CLASSES[buf.getUnsignedByte(index + length - 1)] != 0;
 	}
 
 	/**
@@ -43,15 +124,42 @@ public class NameUtils {
 	 * @param s The name.
 	 * @return The long.
 	 */
-	public static long nameToLong(String s) {
+	public static long nameToLong(CharSequence s) {
 		long l = 0L;
-		for (int i = 0; i < s.length() && i < 12; i++) {
-			char c = s.charAt(i);
+		int length = Math.min(s.length(), MAXIMUM_LENGTH);
+		for (int i = 0; i < length; i++) {
 			l *= 37L;
-			if (c >= 'A' && c <= 'Z') l += (1 + c) - 65;
-			else if (c >= 'a' && c <= 'z') l += (1 + c) - 97;
-			else if (c >= '0' && c <= '9') l += (27 + c) - 48;
+			int v = classOf(s.charAt(i));
+			if (v > 0) l += v;
 		}
+		return strip(l);
+	}
+
+	/**
+	 * Converts a name which is held by a buffer to a long, without
+	 * reading the buffer or creating a string.
+	 * @param buf The buffer holding the name.
+	 * @param index The index of the name's first byte.
+	 * @param length The number of bytes of the name.
+	 * @return The long.
+	 */
+	public static long nameToLong(ChannelBuffer buf, int index, int length) {
+		long l = 0L;
+		length = Math.min(length, MAXIMUM_LENGTH);
+		for (int i = index; i < index + length; i++) {
+			l *= 37L;
+			int v = CHAR_CLASSES[buf.getUnsignedByte(i)];
+			if (v > 0) l += v;
+		}
+		return strip(l);
+	}
+
+	/**
+	 * Strips the trailing spaces of an encoded name.
+	 * @param l The encoded name.
+	 * @return The stripped encoded name.
+	 */
+	private static long strip(long l) {
 		while (l % 37L == 0L && l != 0L) l /= 37L;
 		return l;
 	}
@@ -78,28 +186,38 @@ public class NameUtils {
 	 * @return The formatted name.
 	 */
 	public static String formatNameForProtocol(String s) {
-		return s.toLowerCase().replace(" ", "_");
+		char[] ac = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			char f;
+			if (c >= 'A' && c <= 'Z') f = (char) (c + ('a' - 'A'));
+			else if (c == ' ') f = '_';
+			else if (c < 128) continue;
+			else return s.toLowerCase().replace(" ", "_"); // leave other alphabets to the locale
+			if (ac == null) ac = s.toCharArray();
+			ac[i] = f;
+		}
+
+		/*
+		 * Names which are already formatted are returned as they are.
+		 */
+		return ac == null ? s : new String(ac);
 	}
 
 	/**
 	 * Formats a name for display.
+	 * 
+	 * <p>Spaces and underscores become spaces, and the first character
+	 * along with every character following a space is capitalized.</p>
+	 * 
 	 * @param s The name.
 	 * @return The formatted name.
 	 */
 	public static String formatName(String s) {
-		return fixName(s.replace(" ", "_"));
-	}
-
-	/**
-	 * Method that fixes capitalization in a name.
-	 * @param s The name.
-	 * @return The formatted name.
-	 */
-	private static String fixName(final String s) {
 		if (s.length() > 0) {
 			final char ac[] = s.toCharArray();
 			for (int j = 0; j < ac.length; j++)
-				if (ac[j] == '_') {
+				if (ac[j] == '_' || ac[j] == ' ') {
 					ac[j] = ' ';
 					if ((j + 1 < ac.length) && (ac[j + 1] >= 'a')
 							&& (ac[j + 1] <= 'z')) {
@@ -116,4 +234,4 @@ public class NameUtils {
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util;
+
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Measures the table-driven name handling of {@link NameUtils} against the
+ * regular expression and <code>String</code> based handling it replaced,
+ * which is kept here as it was.
+ * 
+ * <p>Each operation is run over the same names by both, and the average
+ * number of nanoseconds per name is printed for each.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class NameUtilsBenchmark {
+
+	/**
+	 * The number of names which are generated.
+	 */
+	private static final int NAMES = 10000;
+
+	/**
+	 * The number of rounds which are run before measuring, so
+	 * that both paths have been compiled.
+	 */
+	private static final int WARMUP_ROUNDS = 50;
+
+	/**
+	 * The number of rounds which are measured.
+	 */
+	private static final int MEASURED_ROUNDS = 100;
+
+	/**
+	 * The characters names are generated from, which include
+	 * spaces, underscores and capitals.
+	 */
+	private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 _";
+
+	/**
+	 * Keeps the results of each round, so that they can not be
+	 * optimized away.
+	 */
+	private static long sink;
+
+	/**
+	 * An operation which is measured over every name.
+	 * @author Thomas Nappo
+	 */
+	private static abstract class Operation {
+
+		/**
+		 * Runs the operation over a name.
+		 * @param name The name.
+		 * @param buf The name's bytes, from which the name's bytes are read.
+		 * @param index The index of the name's bytes.
+		 * @return A value which depends upon the result.
+		 */
+		abstract long run(String name, ChannelBuffer buf, int index);
+
+	}
+
+	/**
+	 * This class cannot be instantiated.
+	 */
+	private NameUtilsBenchmark() {
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * @param args The command line parameters, which are ignored.
+	 */
+	public static void main(String[] args) {
+		Random random = new Random(0);
+		String[] names = new String[NAMES];
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		int[] indices = new int[NAMES];
+		for (int i = 0; i < names.length; i++) {
+			char[] name = new char[1 + random.nextInt(12)];
+			for (int j = 0; j < name.length; j++) {
+				name[j] = CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+			}
+			names[i] = new String(name);
+			indices[i] = buf.writerIndex();
+			buf.writeBytes(names[i].getBytes());
+		}
+
+		compare("isValidName", names, buf, indices, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return NameUtils.isValidName(name) ? 1 : 0;
+			}
+		}, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return legacyIsValidName(name) ? 1 : 0;
+			}
+		});
+		compare("isValidName (bytes)", names, buf, indices, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return NameUtils.isValidName(buf, index, name.length()) ? 1 : 0;
+			}
+		}, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return legacyIsValidName(buf.toString(index, name.length(), "ISO-8859-1")) ? 1 : 0;
+			}
+		});
+		compare("nameToLong", names, buf, indices, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return NameUtils.nameToLong(name);
+			}
+		}, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return legacyNameToLong(name);
+			}
+		});
+		compare("nameToLong (bytes)", names, buf, indices, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return NameUtils.nameToLong(buf, index, name.length());
+			}
+		}, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return legacyNameToLong(buf.toString(index, name.length(), "ISO-8859-1"));
+			}
+		});
+		compare("formatNameForProtocol", names, buf, indices, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return NameUtils.formatNameForProtocol(name).length();
+			}
+		}, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return legacyFormatNameForProtocol(name).length();
+			}
+		});
+		compare("formatName", names, buf, indices, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return NameUtils.formatName(name).length();
+			}
+		}, new Operation() {
+			@Override
+			long run(String name, ChannelBuffer buf, int index) {
+				return legacyFormatName(name).length();
+			}
+		});
+	}
+
+	/**
+	 * Measures an operation of both paths, printing their results.
+	 * @param name The name of the operation.
+	 * @param names The names to run it over.
+	 * @param buf The buffer which holds the names' bytes.
+	 * @param indices The indices of each name's bytes.
+	 * @param current The operation of the current path.
+	 * @param legacy The operation of the replaced path.
+	 */
+	private static void compare(String name, String[] names, ChannelBuffer buf, int[] indices, Operation current, Operation legacy) {
+		double currentNanos = measure(names, buf, indices, current);
+		double legacyNanos = measure(names, buf, indices, legacy);
+		System.out.println(String.format("%-22s table %7.1f ns/name, legacy %7.1f ns/name (%.1fx)",
+				name, currentNanos, legacyNanos, legacyNanos / currentNanos));
+	}
+
+	/**
+	 * Measures an operation.
+	 * @param names The names to run it over.
+	 * @param buf The buffer which holds the names' bytes.
+	 * @param indices The indices of each name's bytes.
+	 * @param operation The operation.
+	 * @return The average number of nanoseconds per name.
+	 */
+	private static double measure(String[] names, ChannelBuffer buf, int[] indices, Operation operation) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			for (int i = 0; i < names.length; i++) {
+				sink += operation.run(names[i], buf, indices[i]);
+			}
+		}
+		long start = System.nanoTime();
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			for (int i = 0; i < names.length; i++) {
+				sink += operation.run(names[i], buf, indices[i]);
+			}
+		}
+		return (System.nanoTime() - start) / (double) MEASURED_ROUNDS / names.length;
+	}
+
+	/**
+	 * Checks if a name is valid, as was done using a regular expression.
+	 * @param s The name.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	private static boolean legacyIsValidName(String s) {
+		return legacyFormatNameForProtocol(s).matches("[a-z0-9_]+");
+	}
+
+	/**
+	 * Converts a name to a long, as was done by branching upon each character.
+	 * @param s The name.
+	 * @return The long.
+	 */
+	private static long legacyNameToLong(String s) {
+		long l = 0L;
+		for (int i = 0; i < s.length() && i < 12; i++) {
+			char c = s.charAt(i);
+			l *= 37L;
+			if (c >= 'A' && c <= 'Z') l += (1 + c) - 65;
+			else if (c >= 'a' && c <= 'z') l += (1 + c) - 97;
+			else if (c >= '0' && c <= '9') l += (27 + c) - 48;
+		}
+		while (l % 37L == 0L && l != 0L) l /= 37L;
+		return l;
+	}
+
+	/**
+	 * Formats a name for use in the protocol, as was done using
+	 * intermediate strings.
+	 * @param s The name.
+	 * @return The formatted name.
+	 */
+	private static String legacyFormatNameForProtocol(String s) {
+		return s.toLowerCase().replace(" ", "_");
+	}
+
+	/**
+	 * Formats a name for display, as was done using intermediate strings.
+	 * @param s The name.
+	 * @return The formatted name.
+	 */
+	private static String legacyFormatName(String s) {
+		s = s.replace(" ", "_");
+		if (s.length() == 0) {
+			return s;
+		}
+		char[] ac = s.toCharArray();
+		for (int j = 0; j < ac.length; j++) {
+			if (ac[j] == '_') {
+				ac[j] = ' ';
+				if (j + 1 < ac.length && ac[j + 1] >= 'a' && ac[j + 1] <= 'z') {
+					ac[j + 1] = (char) ((ac[j + 1] + 65) - 97);
+				}
+			}
+		}
+		if (ac[0] >= 'a' && ac[0] <= 'z') {
+			ac[0] = (char) ((ac[0] + 65) - 97);
+		}
+		return new String(ac);
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A small cache of frequently repeated strings, such as commands and usernames.
+ * 
+ * <p>The cache is direct-mapped: each string has a single slot chosen by it's
+ * hash. Should the slot hold an equal string, that string is returned and no
+ * string is created; otherwise the slot is replaced. Strings are immutable, so
+ * racing threads can at worst replace each other's entries.</p>
+ * 
+ * <p>Passwords and other sensitive strings must never be read through a cache.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class StringCache {
+
+	/**
+	 * The slots of the cache.
+	 */
+	private final String[] entries;
+
+	/**
+	 * The mask used to turn a hash into a slot.
+	 */
+	private final int mask;
+
+	/**
+	 * The length of the longest string which is cached.
+	 */
+	private final int maximumLength;
+
+	/**
+	 * Constructs a new string cache.
+	 * @param size The number of slots, which is rounded up to a power of two.
+	 * @param maximumLength The length of the longest string which is cached.
+	 */
+	public StringCache(int size, int maximumLength) {
+		int capacity = 1;
+		while (capacity < size) {
+			capacity <<= 1;
+		}
+		this.entries = new String[capacity];
+		this.mask = capacity - 1;
+		this.maximumLength = maximumLength;
+	}
+
+	/**
+	 * Gets the string held by a buffer, without reading the buffer.
+	 * @param buf The buffer holding the string.
+	 * @param index The index of the string's first byte.
+	 * @param length The number of bytes of the string.
+	 * @return The cached string, or a newly decoded string.
+	 */
+	public String get(ChannelBuffer buf, int index, int length) {
+		if (length > maximumLength) {
+			return BufferUtils.decode(buf, index, length);
+		}
+
+		/*
+		 * The hash is computed just as String#hashCode would be
+		 * for the decoded string, so that it can be compared.
+		 */
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + BufferUtils.decode(buf.getByte(index + i));
+		}
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		String s = entries[slot];
+		if (s != null && s.length() == length && s.hashCode() == hash && matches(s, buf, index)) {
+			return s;
+		}
+		s = BufferUtils.decode(buf, index, length);
+		entries[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Checks whether or not a string matches the bytes of a buffer.
+	 * @param s The string.
+	 * @param buf The buffer.
+	 * @param index The index of the first byte.
+	 * @return <code>true</code> if every character matches.
+	 */
+	private static boolean matches(String s, ChannelBuffer buf, int index) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) != BufferUtils.decode(buf.getByte(index + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
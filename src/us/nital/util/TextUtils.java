@@ -0,0 +1,222 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util;
+
+import us.nital.Constants;
+import us.nital.net.io.InBuffer;
+import us.nital.net.io.OutBuffer;
+
+/**
+ * A utility class for packing and unpacking chat text.
+ * 
+ * <p>Chat text is packed into nibbles using {@link Constants#XLATE_TABLE}: the
+ * <tt>13</tt> most common characters take a single nibble and all others take
+ * two. Packing and unpacking translate through precomputed tables and work upon
+ * caller-provided arrays, so they do not allocate.</p>
+ * 
+ * <p>Packed text which is received from a client can be relayed to other
+ * clients as it is, so it should only be unpacked when the server itself needs
+ * to read it (for example for logging or filtering).</p>
+ * 
+ * @author Thomas Nappo
+ */
+public class TextUtils {
+
+	/**
+	 * The maximum number of characters a client will pack.
+	 */
+	public static final int MAXIMUM_LENGTH = 80;
+
+	/**
+	 * The maximum number of bytes {@link #MAXIMUM_LENGTH} characters pack into.
+	 */
+	public static final int MAXIMUM_PACKED_LENGTH = MAXIMUM_LENGTH * 2;
+
+	/**
+	 * The number of translate table indices which fit in a single nibble.
+	 */
+	private static final int SINGLE_NIBBLE = 13;
+
+	/**
+	 * The value added to translate table indices which take two nibbles.
+	 */
+	private static final int DOUBLE_NIBBLE_OFFSET = 195;
+
+	/**
+	 * The translate table index of each character below <tt>256</tt>.
+	 * Upper case letters share the index of their lower case letter, and
+	 * characters which are not in the table are packed as a space.
+	 */
+	private static final byte[] XLATE_INDICES = new byte[256];
+
+	static {
+		/*
+		 * The table is filled backwards so that characters appearing
+		 * twice (the space) take their first index.
+		 */
+		for (int i = Constants.XLATE_TABLE.length - 1; i >= 0; i--) {
+			char c = Constants.XLATE_TABLE[i];
+			XLATE_INDICES[c] = (byte) i;
+			if (c >= 'a' && c <= 'z') {
+				XLATE_INDICES[c - 'a' + 'A'] = (byte) i;
+			}
+		}
+	}
+
+	/**
+	 * The scratch array which text is packed into and unpacked from, per thread.
+	 */
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[MAXIMUM_PACKED_LENGTH];
+		}
+	};
+
+	/**
+	 * Packs text into an array. Only the first {@link #MAXIMUM_LENGTH}
+	 * characters are packed.
+	 * @param text The text to pack.
+	 * @param dst The array to pack into, which must be able to hold
+	 * twice the number of characters.
+	 * @param offset The index of the array to start packing at.
+	 * @return The number of bytes which were packed.
+	 */
+	public static int pack(CharSequence text, byte[] dst, int offset) {
+		int length = Math.min(text.length(), MAXIMUM_LENGTH);
+		int pos = offset;
+		int carry = -1;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			int idx = c < XLATE_INDICES.length ? XLATE_INDICES[c] : 0;
+			if (idx >= SINGLE_NIBBLE) {
+				idx += DOUBLE_NIBBLE_OFFSET;
+			}
+			if (carry == -1) {
+				if (idx < SINGLE_NIBBLE) {
+					carry = idx;
+				} else {
+					dst[pos++] = (byte) idx;
+				}
+			} else if (idx < SINGLE_NIBBLE) {
+				dst[pos++] = (byte) ((carry << 4) + idx);
+				carry = -1;
+			} else {
+				dst[pos++] = (byte) ((carry << 4) + (idx >> 4));
+				carry = idx & 0xF;
+			}
+		}
+		if (carry != -1) {
+			dst[pos++] = (byte) (carry << 4);
+		}
+		return pos - offset;
+	}
+
+	/**
+	 * Packs text into an output buffer.
+	 * @param text The text to pack.
+	 * @param out The buffer to write to.
+	 * @return The number of bytes which were written.
+	 */
+	public static int pack(CharSequence text, OutBuffer out) {
+		byte[] scratch = SCRATCH.get();
+		int length = pack(text, scratch, 0);
+		out.writeBytes(scratch, 0, length);
+		return length;
+	}
+
+	/**
+	 * Unpacks text from an array.
+	 * 
+	 * <p>Trailing spaces are dropped, as they cannot be told apart from
+	 * the padding of text which packed into an odd number of nibbles.</p>
+	 * 
+	 * @param src The array holding the packed text.
+	 * @param offset The index of the first packed byte.
+	 * @param length The number of packed bytes.
+	 * @param dst The array to unpack into, which must be able to
+	 * hold twice the number of packed bytes.
+	 * @return The number of characters which were unpacked.
+	 */
+	public static int unpack(byte[] src, int offset, int length, char[] dst) {
+		int pos = 0;
+		int high = -1;
+		for (int i = offset; i < offset + length; i++) {
+			int value = src[i] & 0xFF;
+			for (int shift = 4; shift >= 0; shift -= 4) {
+				int nibble = (value >> shift) & 0xF;
+				if (high == -1) {
+					if (nibble < SINGLE_NIBBLE) {
+						dst[pos++] = Constants.XLATE_TABLE[nibble];
+					} else {
+						high = nibble;
+					}
+				} else {
+					int idx = ((high << 4) + nibble) - DOUBLE_NIBBLE_OFFSET;
+					if (idx >= 0 && idx < Constants.XLATE_TABLE.length) {
+						dst[pos++] = Constants.XLATE_TABLE[idx];
+					}
+					high = -1;
+				}
+			}
+		}
+		while (pos > 0 && dst[pos - 1] == ' ') {
+			pos--;
+		}
+		return pos;
+	}
+
+	/**
+	 * Unpacks text from an input buffer.
+	 * @param in The buffer to read from.
+	 * @param length The number of packed bytes, which is at most
+	 * {@link #MAXIMUM_PACKED_LENGTH}.
+	 * @param dst The array to unpack into, which must be able to
+	 * hold twice the number of packed bytes.
+	 * @return The number of characters which were unpacked.
+	 */
+	public static int unpack(InBuffer in, int length, char[] dst) {
+		byte[] scratch = SCRATCH.get();
+		in.readBytes(scratch, 0, length);
+		return unpack(scratch, 0, length, dst);
+	}
+
+	/**
+	 * Capitalizes unpacked text the way the client displays it: the
+	 * first letter of the text and of every sentence is upper case.
+	 * @param text The unpacked text.
+	 * @param length The number of characters of the text.
+	 */
+	public static void capitalize(char[] text, int length) {
+		boolean sentence = true;
+		for (int i = 0; i < length; i++) {
+			char c = text[i];
+			if (sentence && c >= 'a' && c <= 'z') {
+				text[i] = (char) (c - 'a' + 'A');
+				sentence = false;
+			}
+			if (c == '.' || c == '!' || c == '?') {
+				sentence = true;
+			}
+		}
+	}
+
+}
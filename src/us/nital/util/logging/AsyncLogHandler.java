@@ -0,0 +1,76 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util.logging;
+
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * A {@link Handler} which hands records over to the {@link LogBuffer},
+ * so that loggers of the <tt>java.util.logging</tt> package never write
+ * towards the console from the thread which logged the record.
+ * 
+ * @author Thomas Nappo
+ */
+public class AsyncLogHandler extends Handler {
+
+	/**
+	 * Replaces the handlers of the root logger with an asynchronous handler.
+	 */
+	public static void install() {
+		java.util.logging.Logger root = java.util.logging.Logger.getLogger("");
+		for (Handler handler : root.getHandlers()) {
+			root.removeHandler(handler);
+		}
+		root.addHandler(new AsyncLogHandler());
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		/*
+		 * Formatters infer the source of a record from the stack of
+		 * the current thread, which would be the consumer by then. The
+		 * logger's name (the class name, in our case) is used instead,
+		 * which also spares the producer from walking the stack.
+		 */
+		record.setSourceClassName(record.getLoggerName());
+		record.setSourceMethodName(null);
+
+		LogBuffer.getSingleton().offer(record);
+	}
+
+	@Override
+	public void flush() {
+		/*
+		 * The log buffer's consumer flushes after every batch.
+		 */
+	}
+
+	@Override
+	public void close() {
+		LogBuffer.getSingleton().shutdown(1000);
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.util.logging;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * An asynchronous logging backend which is built upon a preallocated
+ * ring buffer.
+ * 
+ * <p>Any number of producers (game and I/O threads) may {@link #offer} entries
+ * to the buffer. Offering never blocks; should the buffer be full the entry is
+ * dropped and counted instead. A single consumer thread drains the buffer and
+ * writes entries in batches, so console I/O never takes place on the thread
+ * which logged the entry.</p>
+ * 
+ * <p>Each slot of the ring holds a sequence number which tells producers and the
+ * consumer whether the slot is free or published, so no locks are taken.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class LogBuffer implements Runnable {
+
+	/**
+	 * The number of slots in the ring. This must be a power of two.
+	 */
+	private static final int CAPACITY = 8192;
+
+	/**
+	 * The mask used to turn a sequence into a slot index.
+	 */
+	private static final int MASK = CAPACITY - 1;
+
+	/**
+	 * The maximum number of entries written per batch.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * Encapsulates the singleton instance of the log buffer.
+	 * @author Thomas Nappo
+	 */
+	private static final class SingletonContainer {
+		private static final LogBuffer INSTANCE = new LogBuffer(System.out);
+	}
+
+	/**
+	 * Gets the singleton instance of the log buffer.
+	 * @return The one and only instance of the log buffer.
+	 */
+	public static LogBuffer getSingleton() {
+		return SingletonContainer.INSTANCE;
+	}
+
+	/**
+	 * The entries of the ring, which are either text or log records.
+	 */
+	private final Object[] entries = new Object[CAPACITY];
+
+	/**
+	 * The node level of each text entry. Log records are told apart by
+	 * their type, as node levels can be any value.
+	 */
+	private final int[] nodes = new int[CAPACITY];
+
+	/**
+	 * The sequence of each slot. A slot whose sequence is equal to the
+	 * claiming position is free, and a slot whose sequence is one greater
+	 * than the reading position is published.
+	 */
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+
+	/**
+	 * The next position to be claimed by a producer.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The next position to be read by the consumer. Only the
+	 * consumer thread touches this value.
+	 */
+	private long head = 0;
+
+	/**
+	 * The number of entries which were dropped because the buffer was full.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * The number of dropped entries which the consumer has reported.
+	 */
+	private long reportedDrops = 0;
+
+	/**
+	 * The stream which entries are written to.
+	 */
+	private final PrintStream out;
+
+	/**
+	 * The formatter used to format log records. Only used by the consumer.
+	 */
+	private volatile Formatter formatter = new SimpleFormatter();
+
+	/**
+	 * The builder which batches are written into. Only used by the consumer.
+	 */
+	private final StringBuilder batch = new StringBuilder(4096);
+
+	/**
+	 * The consumer thread.
+	 */
+	private final Thread consumer;
+
+	/**
+	 * Whether or not the consumer is parked (or about to park) waiting
+	 * for entries, in which case producers unpark it.
+	 */
+	private final AtomicBoolean waiting = new AtomicBoolean();
+
+	/**
+	 * Whether or not the consumer is still running.
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * Constructs a new log buffer and starts it's consumer.
+	 * @param out The stream which entries are written to.
+	 */
+	private LogBuffer(PrintStream out) {
+		this.out = out;
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, i);
+		}
+		consumer = new Thread(this, "LogBuffer");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Offers a line of text to the buffer. This method never blocks.
+	 * @param text The text to write.
+	 * @param node The node level of the text.
+	 * @return <code>true</code> if the entry was buffered, <code>false</code>
+	 * if the buffer was full and the entry was dropped.
+	 */
+	boolean offer(String text, int node) {
+		return offer((Object) text, node);
+	}
+
+	/**
+	 * Offers a log record to the buffer. This method never blocks.
+	 * @param record The log record to write.
+	 * @return <code>true</code> if the entry was buffered, <code>false</code>
+	 * if the buffer was full and the entry was dropped.
+	 */
+	boolean offer(LogRecord record) {
+		return offer(record, 0);
+	}
+
+	/**
+	 * Offers an entry to the buffer. This method never blocks.
+	 * @param entry The text or log record to write.
+	 * @param node The node level of text entries.
+	 * @return <code>true</code> if the entry was buffered, <code>false</code>
+	 * if the buffer was full and the entry was dropped.
+	 */
+	private boolean offer(Object entry, int node) {
+		long pos;
+		int idx;
+		for (;;) {
+			pos = tail.get();
+			idx = (int) pos & MASK;
+			long seq = sequences.get(idx);
+			if (seq == pos) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+			} else if (seq < pos) {
+				/*
+				 * The consumer has not yet freed this slot
+				 * from the previous lap, so the ring is full.
+				 */
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+		entries[idx] = entry;
+		nodes[idx] = node;
+
+		/*
+		 * Publishing the sequence also publishes the writes above.
+		 */
+		sequences.set(idx, pos + 1);
+
+		/*
+		 * Only a consumer which is waiting for entries is unparked, so
+		 * producers do not pay for an unpark while it is busy.
+		 */
+		if (waiting.get() && waiting.compareAndSet(true, false)) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of entries which were dropped because
+	 * the buffer was full.
+	 * @return The number of dropped entries.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Sets the formatter used to format log records.
+	 * @param formatter The new formatter.
+	 */
+	public void setFormatter(Formatter formatter) {
+		this.formatter = formatter;
+	}
+
+	/**
+	 * Stops the consumer after it has written all buffered entries.
+	 * @param millis The maximum number of milliseconds to wait.
+	 */
+	public void shutdown(long millis) {
+		running = false;
+		LockSupport.unpark(consumer);
+		try {
+			consumer.join(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			if (drain() == 0) {
+				/*
+				 * The consumer announces that it is waiting before checking
+				 * for entries once more, so an entry which is published in
+				 * between always unparks it.
+				 */
+				waiting.set(true);
+				if (running && !published()) {
+					LockSupport.park(this);
+				}
+				waiting.set(false);
+			}
+		}
+
+		/*
+		 * Write out whatever is left before we finish.
+		 */
+		while (drain() > 0);
+	}
+
+	/**
+	 * Checks whether or not the entry at the reading position is published.
+	 * @return <code>true</code> if there is an entry to read.
+	 */
+	private boolean published() {
+		return sequences.get((int) head & MASK) == head + 1;
+	}
+
+	/**
+	 * Writes one batch of published entries.
+	 * @return The number of entries which were written.
+	 */
+	private int drain() {
+		int count = 0;
+		while (count < BATCH_SIZE) {
+			int idx = (int) head & MASK;
+			if (sequences.get(idx) != head + 1) {
+				break;
+			}
+			Object entry = entries[idx];
+			int node = nodes[idx];
+			entries[idx] = null;
+
+			/*
+			 * Hand the slot back to the producers for the next lap.
+			 */
+			sequences.set(idx, head + CAPACITY);
+			head++;
+			count++;
+
+			/*
+			 * An entry which fails to format is reported in it's place,
+			 * rather than stopping the consumer and every later entry.
+			 */
+			int length = batch.length();
+			try {
+				if (entry instanceof LogRecord) {
+					batch.append(formatter.format((LogRecord) entry));
+				} else {
+					Logger.format(batch, (String) entry, node);
+				}
+			} catch (Throwable t) {
+				batch.setLength(length);
+				batch.append("Failed to format log entry: ").append(t)
+					.append(System.getProperty("line.separator"));
+			}
+		}
+
+		long drops = dropped.get();
+		if (drops != reportedDrops) {
+			batch.append("Log buffer full, dropped ").append(drops - reportedDrops)
+				.append(" entries.").append(System.getProperty("line.separator"));
+			reportedDrops = drops;
+		}
+
+		if (batch.length() > 0) {
+			out.print(batch);
+			out.flush();
+			batch.setLength(0);
+		}
+		return count;
+	}
+
+}
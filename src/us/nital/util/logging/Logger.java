@@ -20,13 +20,16 @@
 
 package us.nital.util.logging;
 
-import static java.lang.System.out;
-
 import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A logging utility for advanced logging with node support.
  * 
+ * <p>Lines are not written by the calling thread; they are offered to
+ * the {@link LogBuffer} along with the node level at the time of the call
+ * and are formatted and written by the buffer's consumer.</p>
+ * 
  * @author Thomas Nappo
  */
 public class Logger {
@@ -37,27 +40,46 @@ public class Logger {
 	 * 
 	 * This is also referred to as the <b>node level</b>.
 	 */
-	private static int i = 0;
+	private static final AtomicInteger i = new AtomicInteger();
+
+	/**
+	 * The system dependent line separator.
+	 */
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
 	/**
 	 * Retrieves the proper symbol to place for the log instance.
-	 * @return no symbol if <code>i == 0</code>, <tt>*</tt> if <code>(i % 2) == 0</code>
-	 * and <tt>-</tt> otherwise.
+	 * @param level The node level of the line.
+	 * @return <tt>*</tt> if <code>(level % 2) == 0</code> and <tt>-</tt> otherwise.
 	 */
-	private static String getSymbol() {
-		if (i == 0)
-			return "";
-		if ((i % 2) == 0)
-			return "*";
-		return "-";
+	private static char getSymbol(int level) {
+		if ((level % 2) == 0)
+			return '*';
+		return '-';
 	}
 
 	/**
-	 * Prints the appropriate symbol along with a space (if there is a symbol).
+	 * Formats a line: a space for each node level, the appropriate symbol
+	 * along with a space (if there is a symbol) and then the text.
+	 * @param bldr The builder to append the line to.
+	 * @param text The text of the node.
+	 * @param level The node level of the line.
 	 */
-	private static void printSymbol() {
-		if (i > 0) 
-			out.print(getSymbol() + " ");
+	static void format(StringBuilder bldr, String text, int level) {
+		for (int t = 0; t < (level * 2); t++)
+			bldr.append(' ');
+		if (level > 0)
+			bldr.append(getSymbol(level)).append(' ');
+		bldr.append(text).append(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Offers a line to the log buffer.
+	 * @param text The text of the node.
+	 * @param level The node level of the line.
+	 */
+	private static void write(String text, int level) {
+		LogBuffer.getSingleton().offer(text, level);
 	}
 
 	/**
@@ -66,10 +88,7 @@ public class Logger {
 	 * @param increase Whether or not to increase the node level.
 	 */
 	public static void log(String text, boolean increase) {
-		indent();
-		printSymbol();
-		out.println(text);
-		if (increase) i++;
+		write(text, increase ? i.getAndIncrement() : i.get());
 	}
 
 	/**
@@ -87,8 +106,7 @@ public class Logger {
 	 * before the output, otherwise the node level will be increased after the output.
 	 */
 	public static void logI(String text, boolean before) {
-		if (before) i++;
-		log(text, !before);
+		write(text, before ? i.incrementAndGet() : i.getAndIncrement());
 	}
 
 	/**
@@ -98,11 +116,7 @@ public class Logger {
 	 * before the output, otherwise the node level will be decreased after the output.
 	 */
 	public static void logD(String text, boolean before) {
-		if (before) i--;
-		indent();
-		printSymbol();
-		out.println(text);
-		if (!before) i--;
+		write(text, before ? i.decrementAndGet() : i.getAndDecrement());
 	}
 
 	/**
@@ -111,7 +125,7 @@ public class Logger {
 	 * if <b><code>false</code></b> the node level will be decreased
 	 */
 	public static void changeNode(boolean up) {
-		i += (up ? 1 : -1);
+		i.addAndGet(up ? 1 : -1);
 	}
 
 	/**
@@ -121,15 +135,7 @@ public class Logger {
 	public static void setNode(int i) {
 		if (i < 0)
 			throw new InvalidParameterException();
-		Logger.i = i;
-	}
-
-	/**
-	 * Prints a space for each node level.
-	 */
-	private static void indent() {
-		for (int t = 0; t < (i * 2); t++)
-			out.print(" ");
+		Logger.i.set(i);
 	}
 
-}
\ No newline at end of file
+}
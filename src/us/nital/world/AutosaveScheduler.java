@@ -0,0 +1,154 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world;
+
+import java.util.logging.Logger;
+
+import us.nital.model.Player;
+import us.nital.util.EntityList;
+
+/**
+ * Saves the players of the world whose progress has changed, spread
+ * evenly over the ticks of an autosave period.
+ * 
+ * <p>A cursor rotates over the index slots of the player list, visiting
+ * an equal share of them each tick so that every slot is visited once per
+ * period. Only players who are dirty are saved, and no more than a budget
+ * of saves take place per tick; slots which the budget did not allow are
+ * visited first upon the next tick. This keeps the I/O of autosaving flat
+ * rather than saving every player within the same tick.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class AutosaveScheduler {
+
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(AutosaveScheduler.class.getName());
+
+	/**
+	 * The players to save.
+	 */
+	private final EntityList<Player> players;
+
+	/**
+	 * The world loader which saves the players.
+	 */
+	private final WorldLoader worldLoader;
+
+	/**
+	 * The number of slots which are visited each tick.
+	 */
+	private final int slotsPerTick;
+
+	/**
+	 * The maximum number of players who are saved each tick.
+	 */
+	private final int budget;
+
+	/**
+	 * The index of the next slot to visit.
+	 */
+	private int cursor;
+
+	/**
+	 * The number of players who were saved.
+	 */
+	private long saved;
+
+	/**
+	 * The number of saves which failed.
+	 */
+	private long failed;
+
+	/**
+	 * Constructs a new autosave scheduler.
+	 * @param players The players to save.
+	 * @param worldLoader The world loader which saves the players.
+	 * @param period The number of ticks in which every player is visited.
+	 * @param budget The maximum number of players who are saved each tick.
+	 */
+	public AutosaveScheduler(EntityList<Player> players, WorldLoader worldLoader, int period, int budget) {
+		this.players = players;
+		this.worldLoader = worldLoader;
+		this.slotsPerTick = (players.capacity() + period - 1) / period;
+		this.budget = budget;
+	}
+
+	/**
+	 * Visits the next share of slots, saving the dirty players within.
+	 * This is only called by the world's tick.
+	 */
+	public void tick() {
+		int capacity = players.capacity();
+		int saves = 0;
+		for (int visited = 0; visited < slotsPerTick; visited++) {
+			Player player = players.get(cursor);
+			if (player != null && player.isDirty()) {
+				if (saves == budget) {
+					/*
+					 * The budget is spent, so the cursor stays upon this
+					 * slot and the rest of the share is visited next tick.
+					 */
+					return;
+				}
+				save(player);
+				saves++;
+			}
+			cursor = (cursor + 1) % capacity;
+		}
+	}
+
+	/**
+	 * Saves a player. Should the save fail the player's dirty flags
+	 * are set again, so that they are saved upon the next visit.
+	 * @param player The player to save.
+	 */
+	private void save(Player player) {
+		int flags = player.clean();
+		if (worldLoader.save(player)) {
+			saved++;
+		} else {
+			player.markDirty(flags);
+			failed++;
+			logger.warning("Failed to autosave: " + player.getSession().getUsername());
+		}
+	}
+
+	/**
+	 * Gets the number of players who were saved.
+	 * @return The number of autosaves.
+	 */
+	public long getSaved() {
+		return saved;
+	}
+
+	/**
+	 * Gets the number of saves which failed.
+	 * @return The number of failed autosaves.
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+}
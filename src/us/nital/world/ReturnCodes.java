@@ -144,6 +144,13 @@ public final class ReturnCodes {
 	 */
 	public static final int UPDATE_IN_PROGRESS = 14;
 
+	/**
+	 * This return code notifies the client that it's reconnection was
+	 * a success. The client resumes the game as it was, rather than
+	 * starting the game over.
+	 */
+	public static final int RECONNECTED = 15;
+
 	/**
 	 * This return code notifies the user that their failed login attempts
 	 * has passed the limit for the time, and to wait 1 minute and try again.
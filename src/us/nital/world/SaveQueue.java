@@ -0,0 +1,415 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A write-behind queue of save snapshots.
+ * 
+ * <p>Saves are captured into a snapshot by the thread which saves, and are then
+ * written by a dedicated thread, so that saving never blocks the game or the
+ * network. Snapshots are coalesced: should a key be submitted again before it
+ * was written, only the latest snapshot is kept. The number of pending keys is
+ * bounded, and submitting never waits; should the queue be full the snapshot
+ * is rejected instead, unless it is forced (as the save of a player who logs
+ * out must never be lost).</p>
+ * 
+ * <p>A batch which fails to be written is queued again, besides the snapshots
+ * which have since been replaced, and is retried after {@link #RETRY_DELAY}.</p>
+ * 
+ * <p>Until a snapshot has been written, {@link #getPending} returns it, so that
+ * loads can see saves which have not yet reached the disk.</p>
+ * 
+ * <p>Snapshots are taken from the queue in batches, which are written using
+ * {@link #write(Map)}. Implementations which can commit many snapshots at once
+ * should override it.</p>
+ * 
+ * <p>The queue's thread is not started until {@link #start} is called, which
+ * should be once the implementation has been fully constructed.</p>
+ * 
+ * @author Thomas Nappo
+ * @param <K> The type of key which identifies a snapshot's destination.
+ */
+public abstract class SaveQueue<K> implements Runnable {
+
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(SaveQueue.class.getName());
+
+	/**
+	 * The number of milliseconds to wait before retrying a failed batch.
+	 */
+	private static final long RETRY_DELAY = 1000;
+
+	/**
+	 * The lock which guards the queue's state.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * The pending snapshots, in the order their keys were first submitted.
+	 */
+	private final Map<K, ChannelBuffer> pending = new LinkedHashMap<K, ChannelBuffer>();
+
+	/**
+	 * The maximum number of pending keys.
+	 */
+	private final int maximumDepth;
+
+	/**
+	 * The maximum number of snapshots which are written per batch.
+	 */
+	private final int maximumBatch;
+
+	/**
+	 * The thread which writes the snapshots.
+	 */
+	private final Thread thread;
+
+	/**
+	 * The batch of snapshots which is being written, or <code>null</code>.
+	 */
+	private Map<K, ChannelBuffer> writing;
+
+	/**
+	 * Whether or not the queue has been shut down.
+	 */
+	private boolean shutdown;
+
+	/**
+	 * The number of snapshots which were submitted.
+	 */
+	private long submitted;
+
+	/**
+	 * The number of snapshots which replaced a pending snapshot of the same key.
+	 */
+	private long coalesced;
+
+	/**
+	 * The number of snapshots which were rejected as the queue was full.
+	 */
+	private long rejected;
+
+	/**
+	 * The number of snapshots which were written.
+	 */
+	private long written;
+
+	/**
+	 * The number of snapshots which failed to be written.
+	 */
+	private long failed;
+
+	/**
+	 * The greatest number of pending keys there has been.
+	 */
+	private int peakDepth;
+
+	/**
+	 * Constructs a new save queue which writes one snapshot at a time.
+	 * @param name The name of the queue's thread.
+	 * @param maximumDepth The maximum number of pending keys.
+	 */
+	public SaveQueue(String name, int maximumDepth) {
+		this(name, maximumDepth, 1);
+	}
+
+	/**
+	 * Constructs a new save queue.
+	 * @param name The name of the queue's thread.
+	 * @param maximumDepth The maximum number of pending keys.
+	 * @param maximumBatch The maximum number of snapshots which are written per batch.
+	 */
+	public SaveQueue(String name, int maximumDepth, int maximumBatch) {
+		this.maximumDepth = maximumDepth;
+		this.maximumBatch = maximumBatch;
+		this.thread = new Thread(this, name);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts the queue's thread.
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Writes a snapshot to it's destination. This is only called
+	 * by the queue's thread.
+	 * @param key The key of the snapshot's destination.
+	 * @param snapshot The snapshot to write.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected abstract void write(K key, ChannelBuffer snapshot) throws IOException;
+
+	/**
+	 * Writes a batch of snapshots to their destinations. This is only called
+	 * by the queue's thread, and writes them one by one unless overridden.
+	 * @param batch The snapshots to write, in the order they were queued.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected void write(Map<K, ChannelBuffer> batch) throws IOException {
+		for (Map.Entry<K, ChannelBuffer> entry : batch.entrySet()) {
+			write(entry.getKey(), entry.getValue().duplicate());
+		}
+	}
+
+	/**
+	 * Submits a snapshot to be written. This never waits.
+	 * @param key The key of the snapshot's destination.
+	 * @param snapshot The snapshot, which must not be modified afterwards.
+	 * @return <code>true</code> if the snapshot was queued, or <code>false</code>
+	 * should the queue be full or shut down.
+	 */
+	public boolean submit(K key, ChannelBuffer snapshot) {
+		return submit(key, snapshot, false);
+	}
+
+	/**
+	 * Submits a snapshot to be written. This never waits.
+	 * @param key The key of the snapshot's destination.
+	 * @param snapshot The snapshot, which must not be modified afterwards.
+	 * @param force Whether the snapshot is queued even though the queue is full.
+	 * @return <code>true</code> if the snapshot was queued, or <code>false</code>
+	 * should the queue be full (and the snapshot not forced) or shut down.
+	 */
+	public boolean submit(K key, ChannelBuffer snapshot, boolean force) {
+		synchronized (lock) {
+			if (shutdown) {
+				return false;
+			}
+			if (pending.containsKey(key)) {
+				pending.put(key, snapshot);
+				submitted++;
+				coalesced++;
+				return true;
+			}
+			if (pending.size() >= maximumDepth && !force) {
+				rejected++;
+				return false;
+			}
+			pending.put(key, snapshot);
+			submitted++;
+			if (pending.size() > peakDepth) {
+				peakDepth = pending.size();
+			}
+			lock.notify();
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the latest snapshot of a key which has not yet been written.
+	 * @param key The key of the snapshot's destination.
+	 * @return A duplicate of the snapshot, or <code>null</code>
+	 * if there is none.
+	 */
+	public ChannelBuffer getPending(K key) {
+		synchronized (lock) {
+			ChannelBuffer snapshot = pending.get(key);
+			if (snapshot == null && writing != null) {
+				snapshot = writing.get(key);
+			}
+			return snapshot == null ? null : snapshot.duplicate();
+		}
+	}
+
+	@Override
+	public void run() {
+		for (;;) {
+			Map<K, ChannelBuffer> batch = new LinkedHashMap<K, ChannelBuffer>();
+			synchronized (lock) {
+				writing = null;
+				while (pending.isEmpty() && !shutdown) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+					}
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				Iterator<Map.Entry<K, ChannelBuffer>> it = pending.entrySet().iterator();
+				while (it.hasNext() && batch.size() < maximumBatch) {
+					Map.Entry<K, ChannelBuffer> entry = it.next();
+					batch.put(entry.getKey(), entry.getValue());
+					it.remove();
+				}
+				writing = batch;
+			}
+
+			/*
+			 * Anything thrown is caught, as the thread must survive to
+			 * write the snapshots which are queued after the batch.
+			 */
+			boolean success = false;
+			try {
+				write(Collections.unmodifiableMap(batch));
+				success = true;
+			} catch (Throwable t) {
+				logger.log(Level.SEVERE, "Failed to write saves: " + batch.keySet(), t);
+			}
+
+			synchronized (lock) {
+				if (success) {
+					written += batch.size();
+					continue;
+				}
+				failed += batch.size();
+
+				/*
+				 * The snapshots of the failed batch are queued again, unless
+				 * a newer snapshot of the same key was submitted meanwhile.
+				 */
+				for (Map.Entry<K, ChannelBuffer> entry : batch.entrySet()) {
+					if (!pending.containsKey(entry.getKey())) {
+						pending.put(entry.getKey(), entry.getValue());
+					}
+				}
+				if (pending.size() > peakDepth) {
+					peakDepth = pending.size();
+				}
+
+				/*
+				 * The batch is retried after a delay rather than straight
+				 * away, as whatever failed it is likely to fail it again.
+				 */
+				try {
+					lock.wait(RETRY_DELAY);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shuts down the queue. Snapshots which are pending are still written,
+	 * and failed batches are still retried until the time runs out.
+	 * @param millis The maximum number of milliseconds to wait for them.
+	 * @return <code>true</code> if every snapshot was written in time.
+	 */
+	public boolean shutdown(long millis) {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+		try {
+			thread.join(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return !thread.isAlive();
+	}
+
+	/**
+	 * Gets the number of pending keys.
+	 * @return The depth of the queue.
+	 */
+	public int getDepth() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Gets the greatest number of pending keys there has been.
+	 * @return The peak depth of the queue.
+	 */
+	public int getPeakDepth() {
+		synchronized (lock) {
+			return peakDepth;
+		}
+	}
+
+	/**
+	 * Gets the number of snapshots which were submitted.
+	 * @return The number of submitted snapshots.
+	 */
+	public long getSubmitted() {
+		synchronized (lock) {
+			return submitted;
+		}
+	}
+
+	/**
+	 * Gets the number of snapshots which replaced a pending
+	 * snapshot of the same key.
+	 * @return The number of coalesced snapshots.
+	 */
+	public long getCoalesced() {
+		synchronized (lock) {
+			return coalesced;
+		}
+	}
+
+	/**
+	 * Gets the number of snapshots which were rejected as the queue was full.
+	 * @return The number of rejected snapshots.
+	 */
+	public long getRejected() {
+		synchronized (lock) {
+			return rejected;
+		}
+	}
+
+	/**
+	 * Gets the number of snapshots which were written.
+	 * @return The number of written snapshots.
+	 */
+	public long getWritten() {
+		synchronized (lock) {
+			return written;
+		}
+	}
+
+	/**
+	 * Gets the number of snapshots which failed to be written.
+	 * @return The number of failed snapshots.
+	 */
+	public long getFailed() {
+		synchronized (lock) {
+			return failed;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (lock) {
+			return "depth=" + pending.size() + ", peak=" + peakDepth + ", submitted=" + submitted
+					+ ", coalesced=" + coalesced + ", rejected=" + rejected
+					+ ", written=" + written + ", failed=" + failed;
+		}
+	}
+
+}
@@ -30,6 +30,10 @@ import us.nital.net.io.OutBuffer;
  * <p>This interface defines the methods for saving by buffer and loading
  * by buffer which must be specifically implemented by the implementation.</p>
  * 
+ * <p>Implementations also track which of their saved fields have changed,
+ * as a set of dirty flags, so that those which have not changed since they
+ * were last saved do not have to be saved again.</p>
+ * 
  * @author Thomas Nappo
  */
 public interface Saveable {
@@ -48,4 +52,25 @@ public interface Saveable {
 	 */
 	public void load(InBuffer buf);
 
+	/**
+	 * Checks whether or not any saved field has changed since the
+	 * implementation was last cleaned.
+	 * @return <code>true</code> if any dirty flag is set.
+	 */
+	public boolean isDirty();
+
+	/**
+	 * Sets dirty flags, marking fields as changed.
+	 * @param flags The flags to set.
+	 */
+	public void markDirty(int flags);
+
+	/**
+	 * Clears every dirty flag. This is called before the implementation is
+	 * saved, so that changes made during the save are saved the next time.
+	 * @return The flags which were set, so that they can be set again should
+	 * the save fail.
+	 */
+	public int clean();
+
 }
\ No newline at end of file
@@ -20,10 +20,31 @@
 
 package us.nital.world;
 
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+
 import us.nital.model.Player;
+import us.nital.net.Network;
 import us.nital.net.Session;
+import us.nital.net.codec.Encoder;
+import us.nital.net.io.OutBuffer;
+import us.nital.net.packet.Packet.Type;
 import us.nital.util.EntityList;
+import us.nital.util.EntityVisitor;
+import us.nital.util.LongMap;
+import us.nital.util.NameUtils;
 import us.nital.world.impl.GenericWorldLoader;
+import us.nital.world.impl.JournalWorldLoader;
+import us.nital.world.impl.MappedWorldLoader;
 
 /**
  * Represents the game world. Within each world holds an
@@ -41,6 +62,38 @@ public final class World {
 	 */
 	private static final World SINGLETON = new World();
 
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(World.class.getName());
+
+	/**
+	 * The number of milliseconds a disconnected player stays within the
+	 * world, during which their client may reconnect them.
+	 */
+	private static final long RECONNECT_GRACE = 15000;
+
+	/**
+	 * The number of milliseconds to wait for a running tick upon shutdown.
+	 */
+	private static final long SCHEDULER_SHUTDOWN_TIMEOUT = 5000;
+
+	/**
+	 * The number of milliseconds between each tick of the world.
+	 */
+	private static final long TICK_RATE = 600;
+
+	/**
+	 * The number of ticks in which every player is visited to be autosaved.
+	 */
+	private static final int AUTOSAVE_PERIOD = 500;
+
+	/**
+	 * The maximum number of players who are autosaved each tick.
+	 */
+	private static final int AUTOSAVE_BUDGET = 16;
+
 	/**
 	 * Gets the singleton instance of the server.
 	 * @return The one and only instance of the server.
@@ -53,7 +106,7 @@ public final class World {
 	 * This list encapsulates the players of the world, each assigned with
 	 * their own index as the index inside the list.
 	 */
-	private final EntityList<Player> players = new EntityList<Player>(2000);
+	private final EntityList<Player> players = new EntityList<Player>(2000, true);
 
 	/**
 	 * Gets the world's {@link #players} list.
@@ -64,12 +117,133 @@ public final class World {
 		return players;
 	}
 
+	/**
+	 * This map associates the online players of the world with their
+	 * username, encoded as a base-37 <code>long</code>.
+	 */
+	private final LongMap<Player> playersByName = new LongMap<Player>(2000);
+
+	/**
+	 * Gets an online player by their username.
+	 * @param encodedUsername The player's username encoded as a base-37 <code>long</code>.
+	 * @return The player, or <code>null</code> if they are not online.
+	 */
+	public Player getPlayer(long encodedUsername) {
+		return playersByName.get(encodedUsername);
+	}
+
+	/**
+	 * Gets an online player by their username.
+	 * @param username The player's username.
+	 * @return The player, or <code>null</code> if they are not online.
+	 */
+	public Player getPlayer(String username) {
+		return getPlayer(NameUtils.nameToLong(username));
+	}
+
+	/**
+	 * Checks whether or not a player is online.
+	 * @param username The player's username.
+	 * @return <code>true</code> if the player is online.
+	 */
+	public boolean isOnline(String username) {
+		return getPlayer(username) != null;
+	}
+
 	/**
 	 * Loads the world for players by creating {@link Result} objects
 	 * which contain attachments which specify information about the
 	 * player's load result.
 	 */
-	private final WorldLoader worldLoader = new GenericWorldLoader();
+	private final WorldLoader worldLoader = createWorldLoader();
+
+	/**
+	 * The system property which selects the world loader: <tt>mapped</tt>
+	 * (the default), <tt>journal</tt> or <tt>generic</tt>.
+	 */
+	private static final String WORLD_LOADER_PROPERTY = "nital.worldLoader";
+
+	/**
+	 * Creates the world loader selected by {@link #WORLD_LOADER_PROPERTY}.
+	 * Player saves are kept within a mapped store by default, or within a
+	 * {@link JournalWorldLoader journal}. Should either fail to open, a game
+	 * file is kept per player instead.
+	 * @return The world loader.
+	 */
+	private static WorldLoader createWorldLoader() {
+		String type = System.getProperty(WORLD_LOADER_PROPERTY, "mapped");
+		if (type.equals("generic")) {
+			return new GenericWorldLoader();
+		}
+		try {
+			if (type.equals("journal")) {
+				return new JournalWorldLoader();
+			}
+			return new MappedWorldLoader();
+		} catch (IOException e) {
+			Logger.getLogger(World.class.getName()).log(Level.SEVERE, "Failed to open the player saves (" + type + ").", e);
+			return new GenericWorldLoader();
+		}
+	}
+
+	/**
+	 * Saves the players whose progress has changed, a few each tick.
+	 */
+	private final AutosaveScheduler autosaveScheduler = new AutosaveScheduler(players, worldLoader, AUTOSAVE_PERIOD, AUTOSAVE_BUDGET);
+
+	/**
+	 * Gets the world's {@link #autosaveScheduler}.
+	 * @return The scheduler which autosaves players.
+	 */
+	public AutosaveScheduler getAutosaveScheduler() {
+		return autosaveScheduler;
+	}
+
+	/**
+	 * Runs the world's ticks along with it's delayed tasks, such as
+	 * unregistering players who did not reconnect.
+	 */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "WorldScheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Starts the world's ticks.
+	 */
+	public void start() {
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tick();
+				} catch (RuntimeException e) {
+					/*
+					 * An exception would cancel every following tick,
+					 * so it is logged and the world keeps ticking.
+					 */
+					logger.log(Level.SEVERE, "Exception during the world's tick.", e);
+				}
+			}
+		}, TICK_RATE, TICK_RATE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Performs a tick of the world.
+	 */
+	private void tick() {
+		/*
+		 * Slots of players who left during the previous tick can be
+		 * handed out again.
+		 */
+		players.tick();
+
+		autosaveScheduler.tick();
+	}
 
 	/**
 	 * Appends a session to be registered.
@@ -79,32 +253,314 @@ public final class World {
 	 */
 	public Result register(Session session) {
 		/*
-		 * Should there be no available slot, we return back null
-		 * to notify the failed registration.
+		 * Everything which is keyed by name relies upon each account having
+		 * a distinct, non-zero key, so names which do not are turned away
+		 * before anything is reserved.
 		 */
-		if (players.availableSlot() < 0) {
-			return null;
+		long name = session.getEncodedUsername();
+		if (name == 0 || !NameUtils.isValidName(session.getUsername())) {
+			return invalidDetails();
 		}
 
 		/*
-		 * Create a new player with an index equivalent to the next available
-		 * slot of the player entity list.
+		 * Should the user already be logged in we can tell them so without
+		 * reserving a slot. The exchange below stays authoritative though,
+		 * as two logins of the same user may race.
 		 */
-		Player player = new Player(players.availableSlot(), session);
+		Player existing = playersByName.get(name);
+		if (existing != null) {
+			/*
+			 * A player whose connection dropped is only waiting to be
+			 * reconnected, so a new login takes over by unregistering them.
+			 */
+			synchronized (existing) {
+				Channel channel = existing.getSession().getChannel();
+				if (channel != null && channel.isConnected()) {
+					return alreadyLoggedIn();
+				}
+				unregister(existing);
+			}
+		}
 
 		/*
-		 * If the world's list of players could not add the null
-		 * is returned back to notify the failed registration.
+		 * We atomically reserve the next available slot of the player entity
+		 * list. Should there be no available slot, we return back null to
+		 * notify the failed registration.
 		 */
-		if (!players.add(player)) {
+		int index = players.reserve();
+		if (index < 0) {
 			return null;
 		}
 
 		/*
-		 * Otherwise the world loader processes a new player created the
-		 * available index.
+		 * Create a new player with an index equivalent to the reserved slot.
+		 */
+		Player player = new Player(index, session);
+
+		/*
+		 * Whatever way the registration fails (including an exception),
+		 * the player's name and slot are handed back in the finally block.
 		 */
-		return worldLoader.process(player);
+		boolean named = false;
+		boolean added = false;
+		boolean entered = false;
+		try {
+			/*
+			 * The player is associated with their name, unless another
+			 * login of the same user won the race.
+			 */
+			if (playersByName.putIfAbsent(name, player) != null) {
+				return alreadyLoggedIn();
+			}
+			named = true;
+
+			/*
+			 * If the world's list of players could not add the player, null
+			 * is returned back to notify the failed registration.
+			 */
+			if (!players.addReserved(player)) {
+				return null;
+			}
+			added = true;
+
+			/*
+			 * Otherwise the world loader processes a new player created the
+			 * available index. Players who may not enter the world are
+			 * unregistered straight away.
+			 */
+			Result result = worldLoader.process(player);
+			entered = result != null && result.<Integer>getAttachment("returnCode") == ReturnCodes.SUCCESS;
+			return result;
+		} finally {
+			if (!entered) {
+				if (named) {
+					playersByName.remove(name, player);
+				}
+				if (added) {
+					players.remove(player);
+				} else {
+					players.release(index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reconnects a session to the player who is still within the world under
+	 * it's username. The player keeps their slot and state, and only their
+	 * connection channel is replaced, so nothing is allocated or loaded.
+	 * 
+	 * <p>Should no such player be within the world the session is registered
+	 * as a new login instead.</p>
+	 * 
+	 * @param session The session of the reconnection.
+	 * @return A result containing the <b>returnCode</b> and <b>player</b> or
+	 * <code>null</code> if the registration failed.
+	 */
+	public Result reconnect(Session session) {
+		if (session.getEncodedUsername() == 0) {
+			return invalidDetails();
+		}
+		Player player = playersByName.get(session.getEncodedUsername());
+		if (player == null) {
+			return register(session);
+		}
+
+		if (!player.getSession().getPassword().equals(session.getPassword())) {
+			return invalidDetails();
+		}
+
+		/*
+		 * The player is moved onto the new channel. Should the old channel
+		 * still be open it is closed, and it no longer leads to the player
+		 * so that it's disconnection is ignored. This is synchronized with
+		 * the end of the grace period, so the player is either reconnected
+		 * or unregistered.
+		 */
+		Channel previous;
+		synchronized (player) {
+			if (playersByName.get(session.getEncodedUsername()) != player) {
+				return register(session);
+			}
+			previous = player.getSession().getChannel();
+			player.getSession().setChannel(session.getChannel());
+		}
+		if (previous != null && previous != session.getChannel()) {
+			Network.PLAYERS.remove(previous);
+			previous.close();
+		}
+
+		Result result = new Result();
+		result.putAttachment("player", player);
+		result.putAttachment("returnCode", ReturnCodes.RECONNECTED);
+		return result;
+	}
+
+	/**
+	 * Notifies the world that a player's connection channel has been
+	 * disconnected. The player is unregistered once the reconnection grace
+	 * period has passed, unless they have been reconnected to another
+	 * channel by then.
+	 * @param player The player who was disconnected.
+	 * @param channel The channel which was disconnected.
+	 */
+	public void disconnect(final Player player, final Channel channel) {
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (player) {
+					if (player.getSession().getChannel() == channel) {
+						unregister(player);
+					}
+				}
+			}
+		}, RECONNECT_GRACE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Unregisters a player from the world, and saves them.
+	 * 
+	 * <p>The save is only captured by the calling thread, and is then
+	 * written by the world loader in the background. It is forced, so that
+	 * it is not turned away should the world loader be busy.</p>
+	 * 
+	 * @param player The player to unregister.
+	 * @return <code>true</code> if the player was registered.
+	 */
+	public boolean unregister(Player player) {
+		if (!remove(player)) {
+			return false;
+		}
+		if (!worldLoader.save(player, true)) {
+			logger.severe("Failed to save: " + player.getSession().getUsername());
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a player from the world without saving them.
+	 * @param player The player to remove.
+	 * @return <code>true</code> if the player was registered.
+	 */
+	private boolean remove(Player player) {
+		playersByName.remove(player.getSession().getEncodedUsername(), player);
+		return players.remove(player);
+	}
+
+	/**
+	 * Shuts down the world. Every player is saved, and the world
+	 * loader then finishes writing the saves.
+	 */
+	public void shutdown() {
+		/*
+		 * Delayed tasks (such as unregistering players who did not
+		 * reconnect) are dropped rather than run after the world loader
+		 * has shut down, and a tick which is still running is waited for
+		 * so that it does not overlap the final saves. The players who
+		 * were waiting to be unregistered are saved along with the others.
+		 */
+		scheduler.shutdownNow();
+		try {
+			if (!scheduler.awaitTermination(SCHEDULER_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				logger.warning("Timed out waiting for the world's tick to finish.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		players.visit(new EntityVisitor<Player>() {
+			@Override
+			public void visit(Player player) {
+				worldLoader.save(player, true);
+			}
+		});
+		worldLoader.shutdown();
+	}
+
+	/**
+	 * Broadcasts a packet to every player in the world.
+	 * @param packet The packet to broadcast.
+	 * @see {@link #broadcast(OutBuffer, Iterable)}
+	 */
+	public void broadcast(OutBuffer packet) {
+		final ChannelBuffer encoded = encodeForBroadcast(packet);
+		players.visit(new EntityVisitor<Player>() {
+			@Override
+			public void visit(Player player) {
+				send(player, encoded);
+			}
+		});
+	}
+
+	/**
+	 * Broadcasts a packet to a group of players, for example
+	 * the players of a region.
+	 * 
+	 * <p>The packet is encoded only once, no matter how many players
+	 * receive it. Each player's channel is written a duplicate of the
+	 * encoded buffer, which shares it's content but has it's own indices.</p>
+	 * 
+	 * @param packet The packet to broadcast.
+	 * @param recipients The players to receive the packet.
+	 */
+	public void broadcast(OutBuffer packet, Iterable<? extends Player> recipients) {
+		ChannelBuffer encoded = encodeForBroadcast(packet);
+		for (Player player : recipients) {
+			send(player, encoded);
+		}
+	}
+
+	/**
+	 * Broadcasts a server message to every player in the world.
+	 * @param message The message's context.
+	 */
+	public void broadcastMessage(String message) {
+		broadcast(new OutBuffer(253, Type.VAR_BYTE).writeString(message));
+	}
+
+	/**
+	 * Encodes a packet which is about to be broadcasted. The encoded buffer
+	 * is read-only, so no recipient's write can alter it for the others.
+	 * @param packet The packet to encode.
+	 * @return The encoded buffer.
+	 */
+	private static ChannelBuffer encodeForBroadcast(OutBuffer packet) {
+		return ChannelBuffers.unmodifiableBuffer(Encoder.encode(packet));
+	}
+
+	/**
+	 * Writes a duplicate of an encoded buffer to a player's channel. It is
+	 * written through the player's packet sender, so that it keeps it's
+	 * order among the other messages which are sent to the player.
+	 * @param player The player to write to.
+	 * @param encoded The encoded buffer.
+	 */
+	private static void send(Player player, ChannelBuffer encoded) {
+		Channel channel = player.getSession().getChannel();
+		if (channel != null && channel.isConnected()) {
+			player.getPacketSender().write(encoded.duplicate());
+		}
+	}
+
+	/**
+	 * Creates a result which notifies the client that the
+	 * username or password is invalid.
+	 * @return The result containing the <b>returnCode</b>.
+	 */
+	private static Result invalidDetails() {
+		Result result = new Result();
+		result.putAttachment("returnCode", ReturnCodes.INVALID_DETAILS);
+		return result;
+	}
+
+	/**
+	 * Creates a result which notifies the client that the
+	 * user is already logged in.
+	 * @return The result containing the <b>returnCode</b>.
+	 */
+	private static Result alreadyLoggedIn() {
+		Result result = new Result();
+		result.putAttachment("returnCode", ReturnCodes.ALREADY_LOGGED_IN);
+		return result;
 	}
 
 }
\ No newline at end of file
@@ -44,6 +44,15 @@ public interface WorldLoader {
 	 */
 	public boolean save(Saveable saveable);
 
+	/**
+	 * Saves a progress to an appropriate output disk file.
+	 * @param saveable The saveable obejct implementation to save.
+	 * @param force Whether the save must be accepted even though the loader
+	 * is busy, as the save of a player who logs out must not be lost.
+	 * @return <code>true</code> if the save was successful.
+	 */
+	public boolean save(Saveable saveable, boolean force);
+
 	/**
 	 * Loads progress from a disk file.
 	 * @param saveable The saveable object implementation to load for.
@@ -51,4 +60,9 @@ public interface WorldLoader {
 	 */
 	public boolean load(Saveable saveable);
 
+	/**
+	 * Shuts down the loader, finishing any saves which are still pending.
+	 */
+	public void shutdown();
+
 }
\ No newline at end of file
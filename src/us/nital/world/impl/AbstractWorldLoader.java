@@ -0,0 +1,295 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.model.Player;
+import us.nital.net.io.InBuffer;
+import us.nital.net.io.OutBuffer;
+import us.nital.world.Result;
+import us.nital.world.ReturnCodes;
+import us.nital.world.Saveable;
+import us.nital.world.WorldLoader;
+import us.nital.world.save.Compression;
+import us.nital.world.save.LzfCompressor;
+
+/**
+ * This implementation is used for world loaders in which player process
+ * results and save/load results are at standard, leaving where the saves
+ * are stored up to the child class.
+ * 
+ * <p>When a player is processed the result created contains <tt>2</tt> attachments.
+ * The attachment <b>player</b> is equivalent to the player who the result was processed
+ * for. The attachment <b>returnCode</b> is a {@link ReturnCodes} constant value.</p>
+ * 
+ * <p>Saves are captured into a snapshot by the thread which saves, which is
+ * then handed to {@link #write}. Loads read the snapshot back using {@link #read}.</p>
+ * 
+ * <p>The latest saves are kept within a {@link SaveCache} as well, so that players
+ * who log back in soon after they logged out are loaded without reading.</p>
+ * 
+ * <p>Snapshots which are large enough are compressed before they are written
+ * or cached, and are decompressed when they are loaded.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link WorldLoader} if you are unclear about how the implementation works.
+ */
+public abstract class AbstractWorldLoader implements WorldLoader {
+
+	/**
+	 * The number of bytes of saves which are cached.
+	 */
+	private static final long CACHE_BYTES = 8 * 1024 * 1024;
+
+	/**
+	 * The number of milliseconds for which saves are cached.
+	 */
+	private static final long CACHE_AGE = 10 * 60 * 1000;
+
+	/**
+	 * The number of bytes from which saves are compressed.
+	 */
+	private static final int COMPRESSION_THRESHOLD = 512;
+
+	/**
+	 * The number of locks which saves are serialized by.
+	 */
+	private static final int SAVE_LOCKS = 64;
+
+	/**
+	 * Compresses large saves. The LZF-style compressor is used, as saves
+	 * are compressed upon the threads which save.
+	 */
+	private final Compression compression = new Compression(new LzfCompressor(), COMPRESSION_THRESHOLD);
+
+	/**
+	 * The cache of the latest saves of players.
+	 */
+	private final SaveCache cache = new SaveCache(CACHE_BYTES, CACHE_AGE);
+
+	/**
+	 * The locks which serialize the saves of each key, so that the latest
+	 * snapshot is both written and cached last.
+	 */
+	private final Object[] saveLocks = new Object[SAVE_LOCKS];
+
+	/**
+	 * Constructs a new world loader, creating it's save locks.
+	 */
+	protected AbstractWorldLoader() {
+		for (int i = 0; i < saveLocks.length; i++) {
+			saveLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Gets the loader's {@link #cache}.
+	 * @return The cache of the latest saves of players.
+	 */
+	public SaveCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Reads the latest save of a player.
+	 * @param player The player to read the save of.
+	 * @return The save, or <code>null</code> if the player has none.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected abstract ChannelBuffer read(Player player) throws IOException;
+
+	/**
+	 * Writes the save of a player. This should not wait for
+	 * the save to reach the disk.
+	 * @param player The player to write the save of.
+	 * @param snapshot The save, which is not modified afterwards.
+	 * @param force Whether the save must be accepted even though the loader is busy.
+	 * @return <code>true</code> if the save was accepted.
+	 */
+	protected abstract boolean write(Player player, ChannelBuffer snapshot, boolean force);
+
+	@Override
+	public Result process(Player player) {
+		/*
+		 * The player's game save could not be loaded therefore
+		 * the result cannot be processed using their save information.
+		 */
+		if (!load(player)) {
+			return null;
+		}
+
+		/*
+		 * Create a new result which we use add our attachments to and
+		 * finally return back.
+		 */
+		Result result = new Result();
+
+		/*
+		 * Because the player has been loaded we can attach it to the result.
+		 */
+		result.putAttachment("player", player);
+
+		/*
+		 * Create a new integer to use as a generated return code.
+		 */
+		int returnCode = ReturnCodes.SUCCESS;
+
+		/*
+		 * Now we start to generate the appropriate return code.
+		 */
+
+		/*
+		 * If the player's right's crown is less than 0, they are banned.
+		 */
+		if (player.getRight().getCrown() < 0) {
+			returnCode = ReturnCodes.BANNED;
+		}
+
+		/*
+		 * We put the generated return code as an attachment to the result.
+		 */
+		result.putAttachment("returnCode", returnCode);
+
+		/*
+		 * Return back the product result.
+		 */
+		return result;
+	}
+
+	@Override
+	public boolean save(Saveable saveable) {
+		return save(saveable, false);
+	}
+
+	@Override
+	public boolean save(Saveable saveable, boolean force) {
+		/*
+		 * The saveable instance must be an instance
+		 * of a player otherwise we cannot save them
+		 * as so.
+		 */
+		if (!(saveable instanceof Player)) {
+			return false;
+		}
+
+		/*
+		 * Create a new object to be used as representing
+		 * the player, and set it to a conversion of the
+		 * saveable instance parameter as a player.
+		 */
+		Player player = (Player) saveable;
+		long key = player.getSession().getEncodedUsername();
+
+		/*
+		 * Saves of the same key may come from several threads at once (such
+		 * as an autosave and a login which takes over the player), so the
+		 * snapshot is taken, written and cached under the key's lock. The
+		 * snapshot which is taken last is then also written and cached last.
+		 */
+		synchronized (saveLocks[(int) (key ^ (key >>> 32)) & (SAVE_LOCKS - 1)]) {
+			/*
+			 * Construct a new output buffer with a provided dynamic buffer.
+			 */
+			OutBuffer buf = new OutBuffer(ChannelBuffers.dynamicBuffer());
+
+			/*
+			 * Use the buffer to call saving of the player's game progress.
+			 */
+			player.save(buf);
+
+			/*
+			 * The snapshot is handed over to be written, and replaces the
+			 * player's cached save. Should it not be accepted the cached save
+			 * is dropped, so that the player is read back as they were written.
+			 */
+			ChannelBuffer snapshot = compression.compress(buf.getInternalBuffer());
+			if (!write(player, snapshot, force)) {
+				cache.remove(key);
+				return false;
+			}
+			cache.put(key, snapshot);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean load(Saveable saveable) {
+		/*
+		 * The saveable instance must be an instance
+		 * of a player otherwise we cannot load them
+		 * as so.
+		 */
+		if (!(saveable instanceof Player)) {
+			return false;
+		}
+
+		/*
+		 * Create a new object to be used as representing
+		 * the player, and set it to a conversion of the
+		 * saveable instance parameter as a player.
+		 */
+		Player player = (Player) saveable;
+
+		/*
+		 * Attempt to process the load request.
+		 */
+		try {
+
+			/*
+			 * Players who were saved recently are loaded from the cache.
+			 */
+			ChannelBuffer save = cache.get(player.getSession().getEncodedUsername());
+			if (save == null) {
+				save = read(player);
+			}
+
+			/*
+			 * A player without a save is new, so they are saved
+			 * to create their account.
+			 */
+			if (save == null) {
+				return save(player);
+			}
+
+			/*
+			 * We then call the load method from the player's save progress.
+			 */
+			player.load(new InBuffer(Compression.decompress(save)));
+
+		} catch (Exception e) {
+			/*
+			 * Because the loading failed, the save can not be used.
+			 */
+			return false;
+		}
+
+		/*
+		 * If everything went good we should arrive here. We then return
+		 * back to notify the caller that the load was a success.
+		 */
+		return true;
+	}
+
+}
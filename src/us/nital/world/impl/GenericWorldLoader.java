@@ -22,16 +22,14 @@ package us.nital.world.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
-import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 import us.nital.model.Player;
-import us.nital.net.io.InBuffer;
-import us.nital.net.io.OutBuffer;
 import us.nital.util.FileUtils;
-import us.nital.world.Result;
 import us.nital.world.ReturnCodes;
-import us.nital.world.Saveable;
+import us.nital.world.SaveQueue;
 import us.nital.world.WorldLoader;
 
 /**
@@ -42,16 +40,33 @@ import us.nital.world.WorldLoader;
  * The attachment <b>player</b> is equivalent to the player who the result was processed
  * for. The attachment <b>returnCode</b> is a {@link ReturnCodes} constant value.</p>
  * 
+ * <p>Saves are captured into a snapshot by the thread which saves, and are written
+ * to the game files by a {@link SaveQueue}. Each game file is replaced atomically,
+ * and the saves pending together are written as a batch.</p>
+ * 
  * @author Thomas Nappo
  * @see {@link WorldLoader} if you are unclear about how the implementation works.
  */
-public class GenericWorldLoader implements WorldLoader {
+public class GenericWorldLoader extends QueuedWorldLoader<File> {
 
 	/**
 	 * The location of player file saves.
 	 */
 	private static final String FILE_LOCATION = "data/games/";
 
+	/**
+	 * The maximum number of saves which are written together.
+	 */
+	private static final int MAXIMUM_BATCH = 64;
+
+	/**
+	 * Constructs a new generic world loader, starting it's save queue.
+	 */
+	public GenericWorldLoader() {
+		super(MAXIMUM_BATCH);
+		getSaveQueue().start();
+	}
+
 	/**
 	 * Gets a player's representative game file.
 	 * @param player The player to get the file for.
@@ -62,168 +77,40 @@ public class GenericWorldLoader implements WorldLoader {
 	}
 
 	@Override
-	public Result process(Player player) {
-		/*
-		 * The player's game save could not be loaded therefore
-		 * the result cannot be processed using their save information.
-		 */
-		if (!load(player)) {
-			return null;
-		}
-
-		/*
-		 * Create a new result which we use add our attachments to and
-		 * finally return back.
-		 */
-		Result result = new Result();
-
-		/*
-		 * Because the player has been loaded we can attach it to the result.
-		 */
-		result.putAttachment("player", player);
-
-		/*
-		 * Create a new integer to use as a generated return code.
-		 */
-		int returnCode = ReturnCodes.SUCCESS;
-
-		/*
-		 * Now we start to generate the appropriate return code.
-		 */
-
-		/*
-		 * If the player's right's crown is less than 0, they are banned.
-		 */
-		if (player.getRight().getCrown() < 0) {
-			returnCode = ReturnCodes.BANNED;
-		}
-
-		/*
-		 * We put the generated return code as an attachment to the result.
-		 */
-		result.putAttachment("returnCode", returnCode);
-
-		/*
-		 * Return back the product result.
-		 */
-		return result;
+	protected File getKey(Player player) {
+		return getFile(player);
 	}
 
 	@Override
-	public boolean save(Saveable saveable) {
-		/*
-		 * The saveable instance must be an instance
-		 * of a player otherwise we cannot save them
-		 * as so.
-		 */
-		if (!(saveable instanceof Player)) {
-			return false;
-		}
-
-		/*
-		 * Construct a new output buffer with a provided dynamic buffer.
-		 */
-		OutBuffer buf = new OutBuffer(ChannelBuffers.dynamicBuffer());
-
-		/*
-		 * Create a new object to be used as representing
-		 * the player, and set it to a conversion of the
-		 * saveable instance parameter as a player.
-		 */
-		Player player = (Player) saveable;
-
-		/*
-		 * Use the buffer to call saving of the player's game progress.
-		 */
-		player.save(buf);
-
-		/*
-		 * Attempt to use our file utilities to write the buffer towards
-		 * an appropriate game file.
-		 */
-		try {
-
-			/*
-			 * The game file's name is equivalent to the player's username
-			 * with a ".bin" extension.
-			 */
-			FileUtils.writeBufferToFile(getFile(player).getPath(), buf.getInternalBuffer());
-
-		} catch (IOException e) {
-			/*
-			 * An exception occuring notifies us that the player file was
-			 * not loaded successfully, therefore we return back to notify
-			 * a caller of this method that the save attempt failed.
-			 */
-			return false;
-		}
-
-		/*
-		 * If everything went good we should arrive here. We then return
-		 * back to notify the caller that the save was a success.
-		 */
-		return true;
+	protected void writeSaves(Map<File, ChannelBuffer> batch) throws IOException {
+		FileUtils.writeBuffersToFiles(batch);
 	}
 
 	@Override
-	public boolean load(Saveable saveable) {
+	protected ChannelBuffer readSave(File file) throws IOException {
 		/*
-		 * The saveable instance must be an instance
-		 * of a player otherwise we cannot load them
-		 * as so.
+		 * Players without a game file have no save. A game file which is
+		 * missing might still be left within it's ready file, should
+		 * replacing it have been interrupted.
 		 */
-		if (!(saveable instanceof Player)) {
-			return false;
+		if (!FileUtils.recoverFile(file)) {
+			return null;
 		}
 
 		/*
-		 * Create a new object to be used as representing
-		 * the player, and set it to a conversion of the
-		 * saveable instance parameter as a player.
-		 */
-		Player player = (Player) saveable;
-
-		/*
-		 * Attempt to process the load request.
+		 * The game file's name is equivalent to the player's
+		 * username with a ".bin" extension.
 		 */
-		try {
-
-			/*
-			 * We attempt to create a new input buffer. The game file's name 
-			 * is equivalent to the player's username with a ".bin" extension.
-			 */
-			InBuffer buf = new InBuffer(FileUtils.buildBufferFromFile(getFile(player).getPath()));
-
-			/*
-			 * We then call the load method from the player's save progress.
-			 * This will throw an exception if {buf} was equivalent to null.
-			 */
-			player.load(buf);
-
-		} catch (Exception e) {
-			/*
-			 * Because the loading failed, the registration needs a new account file.
-			 */
-			File file = getFile(player);
-
-			try {
-				if (file.createNewFile()) {
-					/*
-					 * If the file was successfully created we save the player.
-					 */
-					save(player);
-					return true;
-				}
-			} catch (IOException e1) {}
-
-			return false;
-		}
+		return FileUtils.buildBufferFromFile(file.getPath());
+	}
 
-		/*
-		 * If everything went good we should arrive here. We then return
-		 * back to notify the caller that the save was a success.
-		 */
-		return true;
+	/**
+	 * The game files are this loader's own saves, so players without
+	 * one have no save at all.
+	 */
+	@Override
+	protected ChannelBuffer readLegacySave(Player player) {
+		return null;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,650 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.util.LongMap;
+
+/**
+ * An append-only log of records, indexed by a <code>long</code> key and
+ * split into segment files.
+ * 
+ * <p>Records are appended to the newest segment in batches, and each batch is
+ * forced to the disk once, so that many saves cost one sequential write. An
+ * index in memory holds the location of the newest record of every key, and
+ * is rebuilt upon opening by reading the segments in order.</p>
+ * 
+ * <p>Older segments fill up with records which have been replaced. A compactor
+ * thread copies the live records of such segments to the newest segment, and
+ * then deletes them.</p>
+ * 
+ * <p>Each record is it's key, length, and a checksum of all of them along
+ * with it's data. A torn record at the end of the newest segment is
+ * truncated upon opening. Records which are corrupt anywhere else are
+ * skipped over, and reading carries on from the next valid record.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class Journal implements Runnable {
+
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(Journal.class.getName());
+
+	/**
+	 * The number of bytes of the header of a record.
+	 */
+	private static final int RECORD_HEADER_SIZE = 16;
+
+	/**
+	 * The prefix of segment file names.
+	 */
+	private static final String SEGMENT_PREFIX = "segment-";
+
+	/**
+	 * The suffix of segment file names.
+	 */
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	/**
+	 * The number of milliseconds between checks for segments to compact.
+	 */
+	private static final long COMPACTION_INTERVAL = 30000;
+
+	/**
+	 * Segments which hold less than this portion of live records are compacted.
+	 */
+	private static final double COMPACTION_THRESHOLD = 0.5;
+
+	/**
+	 * A segment file of the journal.
+	 * @author Thomas Nappo
+	 */
+	private static final class Segment {
+
+		/**
+		 * The number of the segment, which orders it among the others.
+		 */
+		private final int id;
+
+		/**
+		 * The segment's file.
+		 */
+		private final File file;
+
+		/**
+		 * The channel of the segment's file.
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * The number of bytes of the segment.
+		 */
+		private long size;
+
+		/**
+		 * The number of bytes of records which are still indexed.
+		 */
+		private long live;
+
+		/**
+		 * Opens a segment.
+		 * @param id The number of the segment.
+		 * @param file The segment's file.
+		 * @throws IOException Should any I/O exceptions occur.
+		 */
+		private Segment(int id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+			this.size = channel.size();
+		}
+
+	}
+
+	/**
+	 * The location of a record within the journal.
+	 * @author Thomas Nappo
+	 */
+	private static final class Location {
+
+		/**
+		 * The segment which holds the record.
+		 */
+		private final Segment segment;
+
+		/**
+		 * The position of the record's header within the segment.
+		 */
+		private final long position;
+
+		/**
+		 * The number of bytes of the record's data.
+		 */
+		private final int length;
+
+		/**
+		 * Constructs a new location.
+		 * @param segment The segment which holds the record.
+		 * @param position The position of the record's header within the segment.
+		 * @param length The number of bytes of the record's data.
+		 */
+		private Location(Segment segment, long position, int length) {
+			this.segment = segment;
+			this.position = position;
+			this.length = length;
+		}
+
+	}
+
+	/**
+	 * The directory of the segment files.
+	 */
+	private final File directory;
+
+	/**
+	 * The number of bytes after which a new segment is started.
+	 */
+	private final long segmentSize;
+
+	/**
+	 * The segments, oldest first. The last one is appended to.
+	 */
+	private final List<Segment> segments = new ArrayList<Segment>();
+
+	/**
+	 * Associates keys with the location of their newest record.
+	 */
+	private final LongMap<Location> index = new LongMap<Location>(1024);
+
+	/**
+	 * Held while appending, which includes copying records during compaction.
+	 */
+	private final Object appendLock = new Object();
+
+	/**
+	 * Held for reading by reads, and for writing while segments are closed.
+	 */
+	private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+
+	/**
+	 * The thread which compacts segments.
+	 */
+	private final Thread compactor;
+
+	/**
+	 * Whether or not the journal has been closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Opens a journal, creating it if it does not yet exist.
+	 * @param directory The directory of the segment files.
+	 * @param segmentSize The number of bytes after which a new segment is started.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public Journal(File directory, long segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		recover();
+		if (segments.isEmpty()) {
+			segments.add(new Segment(1, segmentFile(1)));
+		}
+		compactor = new Thread(this, "JournalCompactor");
+		compactor.setDaemon(true);
+		compactor.start();
+	}
+
+	/**
+	 * Gets the file of a segment.
+	 * @param id The number of the segment.
+	 * @return The segment's file.
+	 */
+	private File segmentFile(int id) {
+		return new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Reads every segment in order, rebuilding the index.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private void recover() throws IOException {
+		List<Integer> ids = new ArrayList<Integer>();
+		String[] names = directory.list();
+		for (String name : names == null ? new String[0] : names) {
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+				}
+			}
+		}
+		Integer[] sorted = ids.toArray(new Integer[ids.size()]);
+		Arrays.sort(sorted);
+
+		for (int i = 0; i < sorted.length; i++) {
+			Segment segment = new Segment(sorted[i], segmentFile(sorted[i]));
+			segments.add(segment);
+			long valid = replay(segment);
+
+			/*
+			 * Only the newest segment was being appended to, so only it may
+			 * end with a torn record. Older segments are left as they are,
+			 * as they would otherwise lose the records after the damage.
+			 */
+			if (valid < segment.size) {
+				if (i == sorted.length - 1) {
+					logger.warning("Truncating torn records of " + segment.file + " at " + valid);
+					segment.channel.truncate(valid);
+					segment.size = valid;
+				} else {
+					logger.warning("Ignoring " + (segment.size - valid) + " corrupt bytes at the end of " + segment.file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a segment into the index. Corrupt records
+	 * are skipped over up to the next valid record.
+	 * @param segment The segment to read.
+	 * @return The number of bytes up to the end of the last valid record.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private long replay(Segment segment) throws IOException {
+		byte[] bytes = readSegment(segment);
+		int position = 0;
+		int end = 0;
+		while ((position = nextRecord(bytes, position)) >= 0) {
+			if (position > end) {
+				logger.warning("Skipped " + (position - end) + " corrupt bytes of " + segment.file + " at " + end);
+			}
+			int length = ByteBuffer.wrap(bytes).getInt(position + 8);
+			index(ByteBuffer.wrap(bytes).getLong(position), new Location(segment, position, length));
+			position += RECORD_HEADER_SIZE + length;
+			end = position;
+		}
+		return end;
+	}
+
+	/**
+	 * Reads the whole of a segment.
+	 * @param segment The segment to read.
+	 * @return The segment's bytes.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private static byte[] readSegment(Segment segment) throws IOException {
+		if (segment.size > Integer.MAX_VALUE) {
+			throw new IOException("Segment is too large: " + segment.file);
+		}
+		ByteBuffer bytes = ByteBuffer.allocate((int) segment.size);
+		while (bytes.hasRemaining()) {
+			if (segment.channel.read(bytes, bytes.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		return bytes.array();
+	}
+
+	/**
+	 * Finds the next valid record within the bytes of a segment.
+	 * @param bytes The segment's bytes.
+	 * @param position The position to start looking from.
+	 * @return The position of the record's header, or <tt>-1</tt> if there is none.
+	 */
+	private static int nextRecord(byte[] bytes, int position) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		for (; position + RECORD_HEADER_SIZE <= bytes.length; position++) {
+			long key = buffer.getLong(position);
+			int length = buffer.getInt(position + 8);
+			if (key == 0 || length < 0 || length > bytes.length - position - RECORD_HEADER_SIZE) {
+				continue;
+			}
+			if (checksum(key, length, bytes, position + RECORD_HEADER_SIZE, length) == buffer.getInt(position + 12)) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Points a key at a new location, keeping the count of live bytes.
+	 * @param key The key.
+	 * @param location The new location.
+	 */
+	private void index(long key, Location location) {
+		location.segment.live += RECORD_HEADER_SIZE + location.length;
+		Location previous = index.put(key, location);
+		if (previous != null) {
+			previous.segment.live -= RECORD_HEADER_SIZE + previous.length;
+		}
+	}
+
+	/**
+	 * Reads the newest record of a key.
+	 * @param key The record's key.
+	 * @return A copy of the record's data, or <code>null</code> if there is none.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public ChannelBuffer read(long key) throws IOException {
+		segmentLock.readLock().lock();
+		try {
+			Location location = index.get(key);
+			if (location == null) {
+				return null;
+			}
+			return ChannelBuffers.wrappedBuffer(read(location));
+		} finally {
+			segmentLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the data of a record.
+	 * @param location The location of the record.
+	 * @return The record's data.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private static byte[] read(Location location) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(location.length);
+		long position = location.position + RECORD_HEADER_SIZE;
+		while (data.hasRemaining()) {
+			if (location.segment.channel.read(data, position + data.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		return data.array();
+	}
+
+	/**
+	 * Appends a batch of records, forcing them to the disk once.
+	 * @param batch The records' data by their keys.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public void append(Map<Long, ChannelBuffer> batch) throws IOException {
+		long[] keys = new long[batch.size()];
+		byte[][] records = new byte[batch.size()][];
+		int i = 0;
+		for (Map.Entry<Long, ChannelBuffer> entry : batch.entrySet()) {
+			ChannelBuffer data = entry.getValue();
+			byte[] bytes = new byte[data.readableBytes()];
+			data.getBytes(data.readerIndex(), bytes);
+			keys[i] = entry.getKey();
+			records[i++] = bytes;
+		}
+		synchronized (appendLock) {
+			append(keys, records);
+		}
+	}
+
+	/**
+	 * Appends records to the newest segment, forces it to the disk,
+	 * and then indexes them.
+	 * @param keys The keys of the records.
+	 * @param records The data of the records.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private void append(long[] keys, byte[][] records) throws IOException {
+		if (closed) {
+			throw new IOException("Journal is closed.");
+		}
+		long total = 0;
+		ByteBuffer[] buffers = new ByteBuffer[records.length * 2];
+		for (int i = 0; i < records.length; i++) {
+			ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+			header.putLong(keys[i]).putInt(records[i].length);
+			header.putInt(checksum(keys[i], records[i].length, records[i], 0, records[i].length));
+			header.flip();
+			buffers[i * 2] = header;
+			buffers[i * 2 + 1] = ByteBuffer.wrap(records[i]);
+			total += RECORD_HEADER_SIZE + records[i].length;
+		}
+
+		Segment segment = current();
+		if (segment.size > 0 && segment.size + total > segmentSize) {
+			segment = roll();
+		}
+
+		/*
+		 * The whole batch is written with one gathering write, and
+		 * forced to the disk once.
+		 */
+		long position = segment.size;
+		segment.channel.position(position);
+		long remaining = total;
+		while (remaining > 0) {
+			remaining -= segment.channel.write(buffers);
+		}
+		segment.channel.force(false);
+
+		synchronized (index) {
+			for (int i = 0; i < records.length; i++) {
+				index(keys[i], new Location(segment, position, records[i].length));
+				position += RECORD_HEADER_SIZE + records[i].length;
+			}
+			segment.size = position;
+		}
+	}
+
+	/**
+	 * Gets the newest segment, which is appended to.
+	 * @return The newest segment.
+	 */
+	private Segment current() {
+		synchronized (index) {
+			return segments.get(segments.size() - 1);
+		}
+	}
+
+	/**
+	 * Starts a new segment.
+	 * @return The new segment.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private Segment roll() throws IOException {
+		Segment segment = new Segment(current().id + 1, segmentFile(current().id + 1));
+		synchronized (index) {
+			segments.add(segment);
+		}
+		return segment;
+	}
+
+	@Override
+	public void run() {
+		while (!closed) {
+			try {
+				Thread.sleep(COMPACTION_INTERVAL);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			try {
+				compact();
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Failed to compact the journal.", e);
+			}
+		}
+	}
+
+	/**
+	 * Compacts every segment but the newest whose portion of live
+	 * records has fallen below the threshold.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public void compact() throws IOException {
+		List<Segment> candidates = new ArrayList<Segment>();
+		synchronized (index) {
+			for (int i = 0; i < segments.size() - 1; i++) {
+				Segment segment = segments.get(i);
+				if (segment.live < segment.size * COMPACTION_THRESHOLD) {
+					candidates.add(segment);
+				}
+			}
+		}
+		for (Segment segment : candidates) {
+			if (closed) {
+				return;
+			}
+			compact(segment);
+		}
+	}
+
+	/**
+	 * Copies the live records of a segment to the newest segment, and
+	 * then deletes it.
+	 * @param segment The segment to compact.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private void compact(Segment segment) throws IOException {
+		/*
+		 * The segment is read and it's live records are found without
+		 * holding the append lock, so that saves are not held up meanwhile.
+		 * Nothing is appended to the segment any longer, and only the
+		 * compactor deletes segments, so it can be read safely.
+		 */
+		byte[] bytes = readSegment(segment);
+		List<Long> keys = new ArrayList<Long>();
+		List<Location> locations = new ArrayList<Location>();
+		int position = 0;
+		while ((position = nextRecord(bytes, position)) >= 0) {
+			long key = ByteBuffer.wrap(bytes).getLong(position);
+			Location location = index.get(key);
+			if (location != null && location.segment == segment && location.position == position) {
+				keys.add(key);
+				locations.add(location);
+			}
+			position += RECORD_HEADER_SIZE + ByteBuffer.wrap(bytes).getInt(position + 8);
+		}
+
+		synchronized (appendLock) {
+			/*
+			 * Saves are appended under the same lock, so the records which
+			 * are still live now stay live until they have been copied.
+			 * Records which were replaced since they were found are skipped.
+			 */
+			List<Long> liveKeys = new ArrayList<Long>(keys.size());
+			List<byte[]> records = new ArrayList<byte[]>(keys.size());
+			for (int i = 0; i < keys.size(); i++) {
+				Location location = locations.get(i);
+				if (index.get(keys.get(i)) == location) {
+					int offset = (int) location.position + RECORD_HEADER_SIZE;
+					liveKeys.add(keys.get(i));
+					records.add(Arrays.copyOfRange(bytes, offset, offset + location.length));
+				}
+			}
+
+			if (!records.isEmpty()) {
+				long[] copied = new long[liveKeys.size()];
+				for (int i = 0; i < copied.length; i++) {
+					copied[i] = liveKeys.get(i);
+				}
+				append(copied, records.toArray(new byte[records.size()][]));
+			}
+		}
+
+		/*
+		 * No key points into the segment any longer, so once no reads
+		 * are taking place it can be deleted.
+		 */
+		segmentLock.writeLock().lock();
+		try {
+			synchronized (index) {
+				segments.remove(segment);
+			}
+			segment.channel.close();
+			if (!segment.file.delete()) {
+				logger.warning("Could not delete " + segment.file);
+			}
+		} finally {
+			segmentLock.writeLock().unlock();
+		}
+		logger.info("Compacted " + segment.file);
+	}
+
+	/**
+	 * Gets the number of keys within the journal.
+	 * @return The number of live records.
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Closes the journal, stopping compaction.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		compactor.interrupt();
+		synchronized (appendLock) {
+			segmentLock.writeLock().lock();
+			try {
+				synchronized (index) {
+					for (Segment segment : segments) {
+						segment.channel.close();
+					}
+				}
+			} finally {
+				segmentLock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Calculates the checksum of a record.
+	 * @param key The record's key.
+	 * @param length The number of bytes of the record's data.
+	 * @param data The array which holds the data.
+	 * @param offset The index of the data within the array.
+	 * @param dataLength The number of bytes of data to check.
+	 * @return The checksum.
+	 */
+	private static int checksum(long key, int length, byte[] data, int offset, int dataLength) {
+		CRC32 crc = new CRC32();
+		byte[] header = ByteBuffer.allocate(12).putLong(key).putInt(length).array();
+		crc.update(header);
+		crc.update(data, offset, dataLength);
+		return (int) crc.getValue();
+	}
+
+}
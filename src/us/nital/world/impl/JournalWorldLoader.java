@@ -0,0 +1,106 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import us.nital.model.Player;
+import us.nital.world.WorldLoader;
+
+/**
+ * This implementation is used for a world loader which appends every player
+ * save to a {@link Journal}. Saves pending within the queue are written in
+ * batches, so that a burst of saves (such as many players logging out at
+ * once) costs a few sequential writes and disk flushes rather than one of
+ * each for every player.
+ * 
+ * <p>Players who have no record within the journal yet are read from their
+ * game file of the {@link GenericWorldLoader}, and are moved into the journal
+ * once they are saved.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link WorldLoader} if you are unclear about how the implementation works.
+ */
+public class JournalWorldLoader extends QueuedWorldLoader<Long> {
+
+	/**
+	 * The location of the journal's directory.
+	 */
+	private static final String DIRECTORY_LOCATION = "data/journal/";
+
+	/**
+	 * The number of bytes after which the journal starts a new segment.
+	 */
+	private static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The maximum number of saves which are appended together.
+	 */
+	private static final int MAXIMUM_BATCH = 256;
+
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(JournalWorldLoader.class.getName());
+
+	/**
+	 * The journal which holds every player save.
+	 */
+	private final Journal journal;
+
+	/**
+	 * Constructs a new journal world loader, opening the journal.
+	 * @throws IOException Should the journal fail to open.
+	 */
+	public JournalWorldLoader() throws IOException {
+		super(MAXIMUM_BATCH);
+		this.journal = new Journal(new File(DIRECTORY_LOCATION), SEGMENT_SIZE);
+		logger.info("Opened player journal with " + journal.size() + " saves.");
+		getSaveQueue().start();
+	}
+
+	@Override
+	protected Long getKey(Player player) {
+		return player.getSession().getEncodedUsername();
+	}
+
+	@Override
+	protected void writeSaves(Map<Long, ChannelBuffer> batch) throws IOException {
+		journal.append(batch);
+	}
+
+	@Override
+	protected ChannelBuffer readSave(Long key) throws IOException {
+		return journal.read(key);
+	}
+
+	@Override
+	protected void close() throws IOException {
+		journal.close();
+	}
+
+}
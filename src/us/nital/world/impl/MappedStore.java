@@ -0,0 +1,516 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.util.LongMap;
+
+/**
+ * A store of records within a single memory-mapped file, indexed by
+ * a <code>long</code> key.
+ * 
+ * <h2>Layout</h2>
+ * <ul>
+ * 	<li>Two copies of the header, each with a generation and a checksum. The
+ * 		header is only ever written to the older copy, so a torn write leaves
+ * 		the newer copy intact.</li>
+ * 	<li>A number of fixed size slots. A record takes up as many consecutive
+ * 		slots as it needs. Each record begins with it's key, generation, length
+ * 		and a checksum of all of them along with it's data.</li>
+ * </ul>
+ * 
+ * <p>Records are never overwritten in place. A new version is written to free
+ * slots and forced to the disk before the slots of the old version are freed
+ * (many records can be written with a single force),
+ * so a crash leaves either version readable. Upon opening, the slots are scanned
+ * to rebuild the index and the free slot map, keeping the newest valid version
+ * of each key.</p>
+ * 
+ * <p>Reads may take place on any thread, while writes are expected to come
+ * from a single thread.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class MappedStore {
+
+	/**
+	 * The value which marks a file as a store.
+	 */
+	private static final int MAGIC = 0x4E53544F;
+
+	/**
+	 * The version of the store's layout.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The number of bytes of one copy of the header.
+	 */
+	private static final int HEADER_SIZE = 28;
+
+	/**
+	 * The offset of the first slot, which leaves room for both header copies.
+	 */
+	private static final int DATA_OFFSET = 4096;
+
+	/**
+	 * The number of bytes of the header of a record.
+	 */
+	private static final int RECORD_HEADER_SIZE = 24;
+
+	/**
+	 * The location of a record within the store.
+	 * @author Thomas Nappo
+	 */
+	private static final class Extent {
+
+		/**
+		 * The first slot of the record.
+		 */
+		private final int slot;
+
+		/**
+		 * The number of slots the record takes up.
+		 */
+		private final int span;
+
+		/**
+		 * The generation of the record.
+		 */
+		private final long generation;
+
+		/**
+		 * Constructs a new extent.
+		 * @param slot The first slot of the record.
+		 * @param span The number of slots the record takes up.
+		 * @param generation The generation of the record.
+		 */
+		private Extent(int slot, int span, long generation) {
+			this.slot = slot;
+			this.span = span;
+			this.generation = generation;
+		}
+
+	}
+
+	/**
+	 * The file of the store.
+	 */
+	private final RandomAccessFile file;
+
+	/**
+	 * The number of bytes of each slot.
+	 */
+	private final int slotSize;
+
+	/**
+	 * The number of slots within the store.
+	 */
+	private int slotCount;
+
+	/**
+	 * The generation of the current header.
+	 */
+	private long headerGeneration;
+
+	/**
+	 * The generation of the newest record.
+	 */
+	private long recordGeneration;
+
+	/**
+	 * The mapping of the whole file.
+	 */
+	private MappedByteBuffer buffer;
+
+	/**
+	 * Associates keys with the location of their newest record.
+	 */
+	private final LongMap<Extent> index;
+
+	/**
+	 * The slots which are taken up by a record.
+	 */
+	private final BitSet used = new BitSet();
+
+	/**
+	 * Opens a store, creating it if it does not yet exist.
+	 * @param path The file of the store.
+	 * @param initialSlotSize The number of bytes of each slot, for a new store.
+	 * @param initialSlotCount The initial number of slots, for a new store.
+	 * @throws IOException Should any I/O exceptions occur, or should the
+	 * file not be a valid store.
+	 */
+	public MappedStore(File path, int initialSlotSize, int initialSlotCount) throws IOException {
+		this.file = new RandomAccessFile(path, "rw");
+		try {
+			if (file.length() < DATA_OFFSET) {
+				this.slotSize = initialSlotSize;
+				this.slotCount = initialSlotCount;
+				file.setLength((long) DATA_OFFSET + (long) slotSize * slotCount);
+				map();
+				writeHeader();
+				writeHeader();
+				this.index = new LongMap<Extent>(slotCount);
+			} else {
+				map();
+				int[] header = readHeader();
+				this.slotSize = header[0];
+				this.slotCount = header[1];
+
+				/*
+				 * The layout is checked against the file before it is
+				 * scanned, so that a damaged store fails to open rather
+				 * than being read out of bounds.
+				 */
+				if (slotSize <= RECORD_HEADER_SIZE || slotCount < 0) {
+					throw new IOException("Store has an invalid layout.");
+				}
+				if (file.length() < DATA_OFFSET + (long) slotSize * slotCount) {
+					throw new IOException("Store is truncated.");
+				}
+				this.index = new LongMap<Extent>(slotCount);
+				scan();
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Maps the whole file into memory.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private void map() throws IOException {
+		buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+	}
+
+	/**
+	 * Reads the newest valid copy of the header.
+	 * @return The slot size and slot count of the header.
+	 * @throws IOException Should neither copy be valid.
+	 */
+	private int[] readHeader() throws IOException {
+		int[] result = null;
+		for (int copy = 0; copy < 2; copy++) {
+			int offset = copy * HEADER_SIZE;
+			if (buffer.getInt(offset) != MAGIC || buffer.getInt(offset + 4) != VERSION) {
+				continue;
+			}
+			byte[] header = get(buffer, offset, HEADER_SIZE);
+			if (checksum(header, HEADER_SIZE - 4) != buffer.getInt(offset + HEADER_SIZE - 4)) {
+				continue;
+			}
+			long generation = buffer.getLong(offset + 8);
+			if (result == null || generation > headerGeneration) {
+				headerGeneration = generation;
+				result = new int[] { buffer.getInt(offset + 16), buffer.getInt(offset + 20) };
+			}
+		}
+		if (result == null) {
+			throw new IOException("Not a valid store.");
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the header over the older copy, and forces it to the disk.
+	 */
+	private void writeHeader() {
+		headerGeneration++;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putLong(headerGeneration).putInt(slotSize).putInt(slotCount);
+		header.putInt(checksum(header.array(), HEADER_SIZE - 4));
+		put(buffer, (int) (headerGeneration & 1) * HEADER_SIZE, header.array());
+		buffer.force();
+	}
+
+	/**
+	 * Scans every slot for records, rebuilding the index and the used slots.
+	 */
+	private void scan() {
+		int slot = 0;
+		while (slot < slotCount) {
+			int position = offset(slot);
+			long key = buffer.getLong(position);
+			long generation = buffer.getLong(position + 8);
+			int length = buffer.getInt(position + 16);
+			int span = length < 0 ? 0 : span(length);
+			if (key == 0 || span == 0 || span > slotCount - slot
+					|| checksum(get(buffer, position, RECORD_HEADER_SIZE + length), RECORD_HEADER_SIZE - 4)
+					!= buffer.getInt(position + RECORD_HEADER_SIZE - 4)) {
+				slot++;
+				continue;
+			}
+			if (generation > recordGeneration) {
+				recordGeneration = generation;
+			}
+			Extent extent = new Extent(slot, span, generation);
+			Extent previous = index.get(key);
+			if (previous == null || previous.generation < generation) {
+				index.put(key, extent);
+				used.set(slot, slot + span);
+				if (previous != null) {
+					used.clear(previous.slot, previous.slot + previous.span);
+				}
+			}
+			slot += span;
+		}
+	}
+
+	/**
+	 * Reads the newest record of a key.
+	 * @param key The record's key.
+	 * @return A copy of the record's data, or <code>null</code> if there is none.
+	 */
+	public synchronized ChannelBuffer read(long key) {
+		Extent extent = index.get(key);
+		if (extent == null) {
+			return null;
+		}
+		int position = offset(extent.slot);
+		int length = buffer.getInt(position + 16);
+		return ChannelBuffers.wrappedBuffer(get(buffer, position + RECORD_HEADER_SIZE, length));
+	}
+
+	/**
+	 * Writes a new record of a key, which replaces the old one once it
+	 * has been forced to the disk.
+	 * @param key The record's key, which can not be <tt>0</tt>.
+	 * @param data The record's data.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public void write(long key, ChannelBuffer data) throws IOException {
+		write(Collections.singletonMap(key, data));
+	}
+
+	/**
+	 * Writes new records of many keys, which replace the old ones once
+	 * they have all been forced to the disk together.
+	 * @param records The records' data by their keys, which can not be <tt>0</tt>.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public void write(Map<Long, ChannelBuffer> records) throws IOException {
+		for (long key : records.keySet()) {
+			if (key == 0) {
+				throw new IllegalArgumentException("Key can not be 0.");
+			}
+		}
+		Map<Long, Extent> extents = new LinkedHashMap<Long, Extent>(records.size() * 2);
+		List<MappedByteBuffer> mappings = new ArrayList<MappedByteBuffer>(1);
+
+		try {
+			for (Map.Entry<Long, ChannelBuffer> entry : records.entrySet()) {
+				long key = entry.getKey();
+				ChannelBuffer data = entry.getValue();
+				int length = data.readableBytes();
+				int span = span(length);
+
+				/*
+				 * The whole record is built before it is copied into the mapping.
+				 */
+				ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+				data.getBytes(data.readerIndex(), record.array(), RECORD_HEADER_SIZE, length);
+
+				synchronized (this) {
+					Extent extent = new Extent(allocate(span), span, ++recordGeneration);
+					extents.put(key, extent);
+
+					/*
+					 * The store might have grown and been mapped again, in
+					 * which case every mapping which was written is forced.
+					 */
+					if (mappings.isEmpty() || mappings.get(mappings.size() - 1) != buffer) {
+						mappings.add(buffer);
+					}
+
+					record.putLong(key).putLong(extent.generation).putInt(length);
+					record.putInt(checksum(record.array(), RECORD_HEADER_SIZE - 4));
+					put(buffer, offset(extent.slot), record.array());
+				}
+			}
+
+			/*
+			 * The new records must reach the disk before the old ones are freed.
+			 */
+			for (MappedByteBuffer mapping : mappings) {
+				mapping.force();
+			}
+		} catch (IOException e) {
+			free(extents);
+			throw e;
+		} catch (RuntimeException e) {
+			free(extents);
+			throw e;
+		}
+
+		synchronized (this) {
+			for (Map.Entry<Long, Extent> entry : extents.entrySet()) {
+				Extent previous = index.put(entry.getKey(), entry.getValue());
+				if (previous != null) {
+					used.clear(previous.slot, previous.slot + previous.span);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Frees the slots of records which were never indexed.
+	 * @param extents The locations of the records.
+	 */
+	private synchronized void free(Map<Long, Extent> extents) {
+		for (Extent extent : extents.values()) {
+			used.clear(extent.slot, extent.slot + extent.span);
+		}
+	}
+
+	/**
+	 * Allocates a run of free slots, growing the store should there be none.
+	 * @param span The number of slots to allocate.
+	 * @return The first allocated slot.
+	 * @throws IOException Should the store fail to grow.
+	 */
+	private int allocate(int span) throws IOException {
+		for (;;) {
+			int slot = used.nextClearBit(0);
+			while (slot + span <= slotCount) {
+				int next = used.nextSetBit(slot);
+				if (next == -1 || next >= slot + span) {
+					used.set(slot, slot + span);
+					return slot;
+				}
+				slot = used.nextClearBit(next);
+			}
+			grow(span);
+		}
+	}
+
+	/**
+	 * Grows the store, doubling it's number of slots.
+	 * @param span The number of slots which are needed at least.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	private void grow(int span) throws IOException {
+		long count = Math.max((long) slotCount * 2, (long) slotCount + span);
+		long length = DATA_OFFSET + (long) slotSize * count;
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Store is full.");
+		}
+		file.setLength(length);
+		map();
+		slotCount = (int) count;
+		writeHeader();
+	}
+
+	/**
+	 * Gets the number of keys within the store.
+	 * @return The number of records.
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * Forces the store to the disk and closes it.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	public synchronized void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+
+	/**
+	 * Gets the position of a slot within the file.
+	 * @param slot The slot.
+	 * @return The slot's position.
+	 */
+	private int offset(int slot) {
+		return DATA_OFFSET + slot * slotSize;
+	}
+
+	/**
+	 * Gets the number of slots a record takes up.
+	 * @param length The number of bytes of the record's data.
+	 * @return The number of slots.
+	 */
+	private int span(int length) {
+		return (int) (((long) RECORD_HEADER_SIZE + length + slotSize - 1) / slotSize);
+	}
+
+	/**
+	 * Copies bytes out of a mapping.
+	 * @param mapping The mapping.
+	 * @param position The position to copy from.
+	 * @param length The number of bytes to copy.
+	 * @return The copied bytes.
+	 */
+	private static byte[] get(MappedByteBuffer mapping, int position, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer src = mapping.duplicate();
+		src.position(position);
+		src.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Copies bytes into a mapping.
+	 * @param mapping The mapping.
+	 * @param position The position to copy to.
+	 * @param bytes The bytes to copy.
+	 */
+	private static void put(MappedByteBuffer mapping, int position, byte[] bytes) {
+		ByteBuffer dst = mapping.duplicate();
+		dst.position(position);
+		dst.put(bytes);
+	}
+
+	/**
+	 * Calculates the checksum of a header or record, which skips over
+	 * the checksum itself.
+	 * @param bytes The header or record.
+	 * @param checksumIndex The index of the checksum.
+	 * @return The checksum.
+	 */
+	private static int checksum(byte[] bytes, int checksumIndex) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, checksumIndex);
+		crc.update(bytes, checksumIndex + 4, bytes.length - checksumIndex - 4);
+		return (int) crc.getValue();
+	}
+
+}
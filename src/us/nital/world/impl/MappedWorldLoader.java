@@ -0,0 +1,110 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import us.nital.model.Player;
+import us.nital.world.WorldLoader;
+
+/**
+ * This implementation is used for a world loader which keeps every player
+ * save within one {@link MappedStore}, indexed by the player's encoded
+ * username. Loading a player is then a lookup within the page cache rather
+ * than opening a file of their own.
+ * 
+ * <p>Players who have no record within the store yet are read from their
+ * game file of the {@link GenericWorldLoader}, and are moved into the store
+ * once they are saved.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link WorldLoader} if you are unclear about how the implementation works.
+ */
+public class MappedWorldLoader extends QueuedWorldLoader<Long> {
+
+	/**
+	 * The location of the store file.
+	 */
+	private static final String FILE_LOCATION = "data/games.dat";
+
+	/**
+	 * The number of bytes of each slot of the store.
+	 */
+	private static final int SLOT_SIZE = 256;
+
+	/**
+	 * The initial number of slots of the store.
+	 */
+	private static final int INITIAL_SLOTS = 4096;
+
+	/**
+	 * The maximum number of saves which are written together.
+	 */
+	private static final int MAXIMUM_BATCH = 256;
+
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(MappedWorldLoader.class.getName());
+
+	/**
+	 * The store which holds every player save.
+	 */
+	private final MappedStore store;
+
+	/**
+	 * Constructs a new mapped world loader, opening the store.
+	 * @throws IOException Should the store fail to open.
+	 */
+	public MappedWorldLoader() throws IOException {
+		super(MAXIMUM_BATCH);
+		this.store = new MappedStore(new File(FILE_LOCATION), SLOT_SIZE, INITIAL_SLOTS);
+		logger.info("Opened player store with " + store.size() + " saves.");
+		getSaveQueue().start();
+	}
+
+	@Override
+	protected Long getKey(Player player) {
+		return player.getSession().getEncodedUsername();
+	}
+
+	@Override
+	protected void writeSaves(Map<Long, ChannelBuffer> batch) throws IOException {
+		store.write(batch);
+	}
+
+	@Override
+	protected ChannelBuffer readSave(Long key) {
+		return store.read(key);
+	}
+
+	@Override
+	protected void close() throws IOException {
+		store.close();
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import us.nital.model.Player;
+import us.nital.util.FileUtils;
+import us.nital.world.SaveQueue;
+import us.nital.world.WorldLoader;
+
+/**
+ * This implementation is used for world loaders which hand their saves over
+ * to a {@link SaveQueue}, leaving how a batch of saves is written and how a
+ * save is read back up to the child class.
+ * 
+ * <p>Loads read a save which is still pending before the child class's saves,
+ * and fall back upon the player's game file of the {@link GenericWorldLoader}
+ * should they have neither, so that players are moved over once they are saved.</p>
+ * 
+ * <p>Child classes start the queue using {@link SaveQueue#start} once they have
+ * been constructed, and close their saves within {@link #close}.</p>
+ * 
+ * @author Thomas Nappo
+ * @param <K> The type of key which identifies a save within the child class's saves.
+ * @see {@link WorldLoader} if you are unclear about how the implementation works.
+ */
+public abstract class QueuedWorldLoader<K> extends AbstractWorldLoader {
+
+	/**
+	 * The maximum number of players whose saves can be pending at once.
+	 */
+	private static final int MAXIMUM_PENDING_SAVES = 4096;
+
+	/**
+	 * The number of milliseconds to wait for pending saves upon shutdown.
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 10000;
+
+	/**
+	 * This singleton logger instance can be used for logging various
+	 * component messages to the console.
+	 */
+	private static final Logger logger = Logger.getLogger(QueuedWorldLoader.class.getName());
+
+	/**
+	 * Writes the snapshots of player saves.
+	 */
+	private final SaveQueue<K> saveQueue;
+
+	/**
+	 * Constructs a new queued world loader. The queue is not started.
+	 * @param maximumBatch The maximum number of saves which are written together.
+	 */
+	protected QueuedWorldLoader(int maximumBatch) {
+		this.saveQueue = new SaveQueue<K>("SaveQueue", MAXIMUM_PENDING_SAVES, maximumBatch) {
+			@Override
+			protected void write(Map<K, ChannelBuffer> batch) throws IOException {
+				writeSaves(batch);
+			}
+
+			@Override
+			protected void write(K key, ChannelBuffer snapshot) throws IOException {
+				writeSaves(Collections.singletonMap(key, snapshot));
+			}
+		};
+	}
+
+	/**
+	 * Gets the loader's {@link #saveQueue}.
+	 * @return The queue which writes the snapshots of player saves.
+	 */
+	public SaveQueue<K> getSaveQueue() {
+		return saveQueue;
+	}
+
+	/**
+	 * Gets the key of a player's save.
+	 * @param player The player.
+	 * @return The key which identifies the player's save.
+	 */
+	protected abstract K getKey(Player player);
+
+	/**
+	 * Writes a batch of saves. This is only called by the queue's thread.
+	 * @param batch The saves by their keys, which are not modified.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected abstract void writeSaves(Map<K, ChannelBuffer> batch) throws IOException;
+
+	/**
+	 * Reads a save which has been written.
+	 * @param key The key of the save.
+	 * @return The save, or <code>null</code> if there is none.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected abstract ChannelBuffer readSave(K key) throws IOException;
+
+	/**
+	 * Reads the save of a player who has none within the loader's saves,
+	 * which is their game file unless overridden.
+	 * @param player The player.
+	 * @return The save, or <code>null</code> if there is none.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected ChannelBuffer readLegacySave(Player player) throws IOException {
+		File file = GenericWorldLoader.getFile(player);
+		if (!FileUtils.recoverFile(file)) {
+			return null;
+		}
+		return FileUtils.buildBufferFromFile(file.getPath());
+	}
+
+	/**
+	 * Closes the loader's saves once every pending save has been written.
+	 * Nothing is closed unless overridden.
+	 * @throws IOException Should any I/O exceptions occur.
+	 */
+	protected void close() throws IOException {
+	}
+
+	@Override
+	protected ChannelBuffer read(Player player) throws IOException {
+		K key = getKey(player);
+
+		/*
+		 * Should the player have a save which is still pending, it is
+		 * newer than their written save and is read instead.
+		 */
+		ChannelBuffer save = saveQueue.getPending(key);
+		if (save != null) {
+			return save;
+		}
+
+		save = readSave(key);
+		if (save != null) {
+			return save;
+		}
+
+		/*
+		 * Otherwise the player might still have a save from before.
+		 */
+		return readLegacySave(player);
+	}
+
+	@Override
+	protected boolean write(Player player, ChannelBuffer snapshot, boolean force) {
+		/*
+		 * The snapshot is queued to be written.
+		 */
+		if (!saveQueue.submit(getKey(player), snapshot, force)) {
+			/*
+			 * The queue being full notifies us that the player was not
+			 * saved, therefore we return back to notify a caller of this
+			 * method that the save attempt failed.
+			 */
+			logger.warning("Save queue is full, could not save: " + player.getSession().getUsername());
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void shutdown() {
+		if (!saveQueue.shutdown(SHUTDOWN_TIMEOUT)) {
+			logger.severe("Timed out writing pending saves (" + saveQueue + ")");
+			return;
+		}
+		logger.info("Pending saves written (" + saveQueue + ")");
+		try {
+			close();
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Failed to close the player saves.", e);
+		}
+	}
+
+}
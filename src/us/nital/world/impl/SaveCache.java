@@ -0,0 +1,227 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A bounded cache of the latest saves of players, so that players who
+ * log back in shortly after logging out (or who reconnect after their
+ * connection dropped) are loaded from memory rather than from the disk.
+ * 
+ * <p>The cache is least recently used first: once it holds more bytes than
+ * it's limit the saves which were used longest ago are evicted. Saves which
+ * are older than the maximum age are evicted as well, as the players they
+ * belong to are no longer likely to return soon.</p>
+ * 
+ * <p>Every save which is accepted replaces the cached save of it's player,
+ * so the cache is never older than what is pending or written.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class SaveCache {
+
+	/**
+	 * The number of bytes each entry is estimated to cost beyond it's save.
+	 */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/**
+	 * A save within the cache.
+	 * @author Thomas Nappo
+	 */
+	private static final class Entry {
+
+		/**
+		 * The save, which is not modified.
+		 */
+		private final ChannelBuffer save;
+
+		/**
+		 * The number of bytes the entry is estimated to cost.
+		 */
+		private final int cost;
+
+		/**
+		 * The time at which the save was cached.
+		 */
+		private final long time;
+
+		/**
+		 * Constructs a new entry.
+		 * @param save The save.
+		 * @param time The time at which the save was cached.
+		 */
+		private Entry(ChannelBuffer save, long time) {
+			this.save = save;
+			this.cost = save.readableBytes() + ENTRY_OVERHEAD;
+			this.time = time;
+		}
+
+	}
+
+	/**
+	 * The entries by their keys, least recently used first.
+	 */
+	private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(256, 0.75f, true);
+
+	/**
+	 * The number of bytes after which entries are evicted.
+	 */
+	private final long maximumBytes;
+
+	/**
+	 * The number of milliseconds after which entries are evicted.
+	 */
+	private final long maximumAge;
+
+	/**
+	 * The number of bytes the entries are estimated to cost.
+	 */
+	private long bytes;
+
+	/**
+	 * The number of lookups which were served by the cache.
+	 */
+	private long hits;
+
+	/**
+	 * The number of lookups which were not.
+	 */
+	private long misses;
+
+	/**
+	 * The number of entries which were evicted.
+	 */
+	private long evicted;
+
+	/**
+	 * Constructs a new save cache.
+	 * @param maximumBytes The number of bytes after which entries are evicted.
+	 * @param maximumAge The number of milliseconds after which entries are evicted.
+	 */
+	public SaveCache(long maximumBytes, long maximumAge) {
+		this.maximumBytes = maximumBytes;
+		this.maximumAge = maximumAge;
+	}
+
+	/**
+	 * Caches the latest save of a player, replacing any older one.
+	 * @param key The player's encoded username.
+	 * @param save The save, which must not be modified afterwards.
+	 */
+	public synchronized void put(long key, ChannelBuffer save) {
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry(save, now);
+		if (entry.cost > maximumBytes) {
+			remove(key);
+			return;
+		}
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			bytes -= previous.cost;
+		}
+		bytes += entry.cost;
+		evict(now);
+	}
+
+	/**
+	 * Gets the cached save of a player.
+	 * @param key The player's encoded username.
+	 * @return A duplicate of the save, or <code>null</code> if none is cached.
+	 */
+	public synchronized ChannelBuffer get(long key) {
+		long now = System.currentTimeMillis();
+		evict(now);
+		Entry entry = entries.get(key);
+		if (entry == null || now - entry.time >= maximumAge) {
+			if (entry != null) {
+				remove(key);
+				evicted++;
+			}
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.save.duplicate();
+	}
+
+	/**
+	 * Removes the cached save of a player.
+	 * @param key The player's encoded username.
+	 */
+	public synchronized void remove(long key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.cost;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache is within
+	 * it's limit, along with every entry which is too old.
+	 * @param now The current time.
+	 */
+	private void evict(long now) {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (bytes <= maximumBytes && now - entry.time < maximumAge) {
+				/*
+				 * Entries are not ordered by age, but stopping at the first
+				 * entry which may stay keeps eviction cheap. Older entries
+				 * behind it are evicted once they become least recently used.
+				 */
+				break;
+			}
+			iterator.remove();
+			bytes -= entry.cost;
+			evicted++;
+		}
+	}
+
+	/**
+	 * Gets the number of saves within the cache.
+	 * @return The number of cached saves.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of bytes the cache is estimated to cost.
+	 * @return The cache's {@link #bytes}.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "size=" + entries.size() + ", bytes=" + bytes + ", hits=" + hits
+				+ ", misses=" + misses + ", evicted=" + evicted;
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.util.BufferUtils;
+
+/**
+ * Compresses persisted records which are at least a threshold in size.
+ * 
+ * <p>A compressed record begins with the {@link #MAGIC} byte, followed by the
+ * identifier of it's compressor and it's uncompressed length as a
+ * variable-length int. Records which are smaller than the threshold, or which
+ * do not become smaller, are kept as they are; neither a tagged save nor a
+ * save from before the tagged format can begin with the magic byte.</p>
+ * 
+ * <p>Records are decompressed by the compressor which their header names,
+ * whichever compressor is used for new records. The length a record claims
+ * is checked against {@link #MAXIMUM_LENGTH} and the compressor's maximum
+ * ratio before anything is allocated, so a malformed record can not
+ * exhaust the memory.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link Compressor}
+ */
+public final class Compression {
+
+	/**
+	 * The first byte of every compressed record.
+	 */
+	public static final int MAGIC = 0xFE;
+
+	/**
+	 * The maximum number of bytes of a decompressed record.
+	 */
+	public static final int MAXIMUM_LENGTH = 16 * 1024 * 1024;
+
+	/**
+	 * The compressors by their identifiers.
+	 */
+	private static final Compressor[] compressors = new Compressor[256];
+
+	/**
+	 * Registers the compressors.
+	 */
+	static {
+		register(new DeflateCompressor());
+		register(new LzfCompressor());
+	}
+
+	/**
+	 * Registers a compressor, so that the records it compressed can be read.
+	 * @param compressor The compressor to register.
+	 */
+	public static void register(Compressor compressor) {
+		compressors[compressor.getId()] = compressor;
+	}
+
+	/**
+	 * The compressor which new records are compressed with, or
+	 * <code>null</code> should they not be compressed.
+	 */
+	private final Compressor compressor;
+
+	/**
+	 * The number of bytes from which records are compressed.
+	 */
+	private final int threshold;
+
+	/**
+	 * Constructs a new compression.
+	 * @param compressor The compressor which new records are compressed with,
+	 * or <code>null</code> should they not be compressed.
+	 * @param threshold The number of bytes from which records are compressed.
+	 */
+	public Compression(Compressor compressor, int threshold) {
+		this.compressor = compressor;
+		this.threshold = threshold;
+		if (compressor != null) {
+			register(compressor);
+		}
+	}
+
+	/**
+	 * Checks whether or not a record is compressed, without reading the buffer.
+	 * @param buf The buffer which holds the record.
+	 * @return <code>true</code> if the record begins with the magic byte.
+	 */
+	public static boolean isCompressed(ChannelBuffer buf) {
+		return buf.readable() && buf.getUnsignedByte(buf.readerIndex()) == MAGIC;
+	}
+
+	/**
+	 * Compresses a record, should it be large enough. The buffer is not read.
+	 * @param record The record.
+	 * @return The compressed record, or the record should it not be compressed.
+	 */
+	public ChannelBuffer compress(ChannelBuffer record) {
+		int length = record.readableBytes();
+		if (compressor == null || length < threshold) {
+			return record;
+		}
+
+		byte[] src;
+		int offset;
+		if (record.hasArray()) {
+			src = record.array();
+			offset = record.arrayOffset() + record.readerIndex();
+		} else {
+			src = new byte[length];
+			record.getBytes(record.readerIndex(), src);
+			offset = 0;
+		}
+
+		byte[] compressed = compressor.compress(src, offset, length);
+		if (compressed == null) {
+			return record;
+		}
+
+		ChannelBuffer header = ChannelBuffers.buffer(7);
+		header.writeByte(MAGIC);
+		header.writeByte(compressor.getId());
+		BufferUtils.writeVarInt(header, length);
+		return ChannelBuffers.wrappedBuffer(header, ChannelBuffers.wrappedBuffer(compressed));
+	}
+
+	/**
+	 * Decompresses a record, should it be compressed. The buffer is not read.
+	 * @param record The record.
+	 * @return The decompressed record, or the record should it not be compressed.
+	 * @throws IOException should the record be malformed or too long, or it's compressor unknown.
+	 */
+	public static ChannelBuffer decompress(ChannelBuffer record) throws IOException {
+		if (!isCompressed(record)) {
+			return record;
+		}
+		ChannelBuffer in = record.duplicate();
+		in.skipBytes(1);
+		Compressor compressor = compressors[in.readUnsignedByte()];
+		if (compressor == null) {
+			throw new IOException("Unknown compressor: " + in.getUnsignedByte(in.readerIndex() - 1));
+		}
+		int length = BufferUtils.readVarInt(in);
+		int compressedLength = in.readableBytes();
+		if (length < 0 || length > MAXIMUM_LENGTH || length > (long) compressedLength * compressor.getMaximumRatio()) {
+			throw new IOException("Compressed record is malformed, it's length is " + length);
+		}
+
+		byte[] src;
+		int offset;
+		if (in.hasArray()) {
+			src = in.array();
+			offset = in.arrayOffset() + in.readerIndex();
+		} else {
+			src = new byte[compressedLength];
+			in.getBytes(in.readerIndex(), src);
+			offset = 0;
+		}
+
+		byte[] dst = new byte[length];
+		compressor.decompress(src, offset, compressedLength, dst);
+		return ChannelBuffers.wrappedBuffer(dst);
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.net.io.OutBuffer;
+import us.nital.util.FileUtils;
+
+/**
+ * Measures how fast each compressor compresses and decompresses saves,
+ * against how many bytes the saves then take up on the disk.
+ * 
+ * <p>The saves which are measured are read from the files named by the
+ * command line parameters (such as the game files within
+ * <tt>data/savedgames/</tt>), or are generated should there be none.
+ * Saves are compressed through a {@link Compression} with the same
+ * threshold as the world loaders, so that small saves are stored as
+ * they are, just as they would be.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class CompressionBenchmark {
+
+	/**
+	 * The number of bytes from which saves are compressed.
+	 */
+	private static final int THRESHOLD = 512;
+
+	/**
+	 * The number of saves which are generated.
+	 */
+	private static final int GENERATED_SAVES = 2000;
+
+	/**
+	 * The number of rounds which are run before measuring, so
+	 * that the compressors have been compiled.
+	 */
+	private static final int WARMUP_ROUNDS = 10;
+
+	/**
+	 * The number of rounds which are measured.
+	 */
+	private static final int MEASURED_ROUNDS = 20;
+
+	/**
+	 * Keeps the results of each round, so that they can not be
+	 * optimized away.
+	 */
+	private static long sink;
+
+	/**
+	 * This class cannot be instantiated.
+	 */
+	private CompressionBenchmark() {
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * @param args The files of the saves to measure, if any.
+	 * @throws IOException Should a save fail to be read or decompressed.
+	 */
+	public static void main(String[] args) throws IOException {
+		List<ChannelBuffer> saves = new ArrayList<ChannelBuffer>();
+		for (String name : args) {
+			saves.add(Compression.decompress(FileUtils.buildBufferFromFile(name)));
+		}
+		if (saves.isEmpty()) {
+			Random random = new Random(0);
+			for (int i = 0; i < GENERATED_SAVES; i++) {
+				saves.add(generate(random));
+			}
+		}
+
+		long total = 0;
+		for (ChannelBuffer save : saves) {
+			total += save.readableBytes();
+		}
+		System.out.println(saves.size() + " saves of " + total + " bytes.");
+
+		measure("none", new Compression(null, THRESHOLD), saves, total);
+		measure("lzf", new Compression(new LzfCompressor(), THRESHOLD), saves, total);
+		measure("deflate-fast", new Compression(new DeflateCompressor(Deflater.BEST_SPEED), THRESHOLD), saves, total);
+		measure("deflate-default", new Compression(new DeflateCompressor(Deflater.DEFAULT_COMPRESSION), THRESHOLD), saves, total);
+		measure("deflate-best", new Compression(new DeflateCompressor(Deflater.BEST_COMPRESSION), THRESHOLD), saves, total);
+	}
+
+	/**
+	 * Measures a compression, printing it's results.
+	 * @param name The name of the compression.
+	 * @param compression The compression to measure.
+	 * @param saves The saves to compress.
+	 * @param total The number of bytes of the saves.
+	 * @throws IOException Should a save fail to be decompressed.
+	 */
+	private static void measure(String name, Compression compression, List<ChannelBuffer> saves, long total) throws IOException {
+		List<ChannelBuffer> compressed = new ArrayList<ChannelBuffer>(saves.size());
+		long stored = 0;
+		for (ChannelBuffer save : saves) {
+			ChannelBuffer record = compression.compress(save);
+			compressed.add(record);
+			stored += record.readableBytes();
+		}
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			compress(compression, saves);
+			decompress(compressed);
+		}
+		long compressNanos = 0;
+		long decompressNanos = 0;
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			compress(compression, saves);
+			compressNanos += System.nanoTime() - start;
+			start = System.nanoTime();
+			decompress(compressed);
+			decompressNanos += System.nanoTime() - start;
+		}
+
+		System.out.println(String.format("%-16s stored %10d bytes (%5.1f%%), compress %8.1f MB/s, decompress %8.1f MB/s",
+				name, stored, stored * 100.0 / total,
+				throughput(total * MEASURED_ROUNDS, compressNanos),
+				throughput(total * MEASURED_ROUNDS, decompressNanos)));
+	}
+
+	/**
+	 * Compresses every save once.
+	 * @param compression The compression to use.
+	 * @param saves The saves to compress.
+	 */
+	private static void compress(Compression compression, List<ChannelBuffer> saves) {
+		for (ChannelBuffer save : saves) {
+			sink += compression.compress(save).readableBytes();
+		}
+	}
+
+	/**
+	 * Decompresses every record once.
+	 * @param records The records to decompress.
+	 * @throws IOException Should a record fail to be decompressed.
+	 */
+	private static void decompress(List<ChannelBuffer> records) throws IOException {
+		for (ChannelBuffer record : records) {
+			sink += Compression.decompress(record).readableBytes();
+		}
+	}
+
+	/**
+	 * Calculates a throughput.
+	 * @param bytes The number of bytes which were processed.
+	 * @param nanos The number of nanoseconds it took.
+	 * @return The number of megabytes processed per second.
+	 */
+	private static double throughput(long bytes, long nanos) {
+		return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+	}
+
+	/**
+	 * Generates a save resembling a player's, of the tagged format.
+	 * Ids and amounts repeat much like a real inventory and bank do.
+	 * @param random The random to generate the save with.
+	 * @return The save.
+	 */
+	private static ChannelBuffer generate(Random random) {
+		OutBuffer out = new OutBuffer(ChannelBuffers.dynamicBuffer());
+		SaveWriter writer = new SaveWriter(out);
+
+		OutBuffer details = writer.section();
+		details.writeString("player" + random.nextInt(100000));
+		details.writeString("password" + random.nextInt(100000));
+		details.write(random.nextInt(3));
+		writer.write(1, details);
+
+		OutBuffer position = writer.section();
+		position.writeShort(3200 + random.nextInt(64));
+		position.writeShort(3200 + random.nextInt(64));
+		position.write(random.nextInt(4));
+		writer.write(2, position);
+
+		OutBuffer skills = writer.section();
+		for (int i = 0; i < 21; i++) {
+			int level = 1 + random.nextInt(99);
+			skills.write(level);
+			skills.writeInt(level * level * 100 + random.nextInt(1000));
+		}
+		writer.write(3, skills);
+
+		writer.write(4, items(writer, random, 28, 28));
+		writer.write(5, items(writer, random, 14, 14));
+		writer.write(6, items(writer, random, 352, random.nextInt(352)));
+		writer.finish();
+		return out.getInternalBuffer();
+	}
+
+	/**
+	 * Generates a container of items.
+	 * @param writer The writer of the save.
+	 * @param random The random to generate the items with.
+	 * @param capacity The number of slots of the container.
+	 * @param count The number of slots which hold an item.
+	 * @return The section holding the container.
+	 */
+	private static OutBuffer items(SaveWriter writer, Random random, int capacity, int count) {
+		OutBuffer section = writer.section();
+		section.writeShort(capacity);
+		for (int i = 0; i < capacity; i++) {
+			if (i >= count) {
+				section.writeShort(0);
+				continue;
+			}
+			section.writeShort(1 + random.nextInt(random.nextBoolean() ? 64 : 8000));
+			section.writeVarInt(random.nextInt(8) == 0 ? random.nextInt(1000000) : 1);
+		}
+		return section;
+	}
+
+}
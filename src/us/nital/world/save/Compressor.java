@@ -0,0 +1,86 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import java.io.IOException;
+
+/**
+ * A compression algorithm for persisted records.
+ * 
+ * <p>Each compressor has an identifier which is written within the header of
+ * the records it compresses, so records remain readable after the compressor
+ * which is used for new records has been changed.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link Compression}
+ */
+public abstract class Compressor {
+
+	/**
+	 * The compressor's identifier.
+	 */
+	private final int id;
+
+	/**
+	 * Constructs a new compressor.
+	 * @param id The compressor's identifier, from <tt>0</tt> to <tt>255</tt>.
+	 */
+	protected Compressor(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Gets the compressor's {@link #id}.
+	 * @return The compressor's identifier.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the greatest number of times larger than the compressed data
+	 * the data can be, which bounds the length a record may claim.
+	 * @return The compressor's maximum compression ratio.
+	 */
+	public abstract int getMaximumRatio();
+
+	/**
+	 * Compresses data.
+	 * @param src The array which holds the data.
+	 * @param offset The index of the data within the array.
+	 * @param length The number of bytes of data.
+	 * @return The compressed data, or <code>null</code> should it not be
+	 * smaller than the data.
+	 */
+	public abstract byte[] compress(byte[] src, int offset, int length);
+
+	/**
+	 * Decompresses data.
+	 * @param src The array which holds the compressed data.
+	 * @param offset The index of the compressed data within the array.
+	 * @param length The number of bytes of compressed data.
+	 * @param dst The array to decompress to, which is exactly as long
+	 * as the data was.
+	 * @throws IOException should the compressed data be malformed.
+	 */
+	public abstract void decompress(byte[] src, int offset, int length, byte[] dst) throws IOException;
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compressor which uses the deflate algorithm, which compresses well
+ * at a moderate cost.
+ * 
+ * <p>Deflaters and inflaters hold native memory and are costly to create,
+ * so they are kept within bounded pools and reset between uses rather than
+ * being created for each record.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class DeflateCompressor extends Compressor {
+
+	/**
+	 * The compressor's identifier.
+	 */
+	public static final int ID = 1;
+
+	/**
+	 * The maximum number of deflaters and inflaters which are pooled.
+	 */
+	private static final int POOL_CAPACITY = 8;
+
+	/**
+	 * The deflaters which are ready to be used.
+	 */
+	private final Deflater[] deflaters = new Deflater[POOL_CAPACITY];
+
+	/**
+	 * The number of deflaters which are ready to be used.
+	 */
+	private int deflaterCount;
+
+	/**
+	 * The inflaters which are ready to be used.
+	 */
+	private final Inflater[] inflaters = new Inflater[POOL_CAPACITY];
+
+	/**
+	 * The number of inflaters which are ready to be used.
+	 */
+	private int inflaterCount;
+
+	/**
+	 * The level which data is compressed at.
+	 */
+	private final int level;
+
+	/**
+	 * Constructs a new deflate compressor.
+	 * @param level The level which data is compressed at, from
+	 * {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+	 */
+	public DeflateCompressor(int level) {
+		super(ID);
+		this.level = level;
+	}
+
+	/**
+	 * Constructs a new deflate compressor which favours speed.
+	 */
+	public DeflateCompressor() {
+		this(Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * The deflate format can not compress data by more than <tt>1032</tt> times.
+	 */
+	@Override
+	public int getMaximumRatio() {
+		return 1032;
+	}
+
+	@Override
+	public byte[] compress(byte[] src, int offset, int length) {
+		Deflater deflater = acquireDeflater();
+		try {
+			deflater.setInput(src, offset, length);
+			deflater.finish();
+
+			/*
+			 * The output is only useful should it be smaller than the
+			 * input, so it never needs to be longer than that.
+			 */
+			byte[] dst = new byte[length];
+			int written = 0;
+			while (!deflater.finished()) {
+				if (written == dst.length) {
+					return null;
+				}
+				written += deflater.deflate(dst, written, dst.length - written);
+			}
+			if (written >= length) {
+				return null;
+			}
+			byte[] compressed = new byte[written];
+			System.arraycopy(dst, 0, compressed, 0, written);
+			return compressed;
+		} finally {
+			releaseDeflater(deflater);
+		}
+	}
+
+	@Override
+	public void decompress(byte[] src, int offset, int length, byte[] dst) throws IOException {
+		Inflater inflater = acquireInflater();
+		try {
+			inflater.setInput(src, offset, length);
+			int read = 0;
+			while (read < dst.length && !inflater.finished()) {
+				int n = inflater.inflate(dst, read, dst.length - read);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += n;
+			}
+			if (read != dst.length || !inflater.finished()) {
+				throw new IOException("Compressed data is malformed.");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Compressed data is malformed: " + e.getMessage());
+		} finally {
+			releaseInflater(inflater);
+		}
+	}
+
+	/**
+	 * Acquires a deflater from the pool.
+	 * @return A pooled deflater, or a new one if the pool is empty.
+	 */
+	private Deflater acquireDeflater() {
+		synchronized (deflaters) {
+			if (deflaterCount > 0) {
+				Deflater deflater = deflaters[--deflaterCount];
+				deflaters[deflaterCount] = null;
+				return deflater;
+			}
+		}
+		return new Deflater(level);
+	}
+
+	/**
+	 * Releases a deflater back into the pool, or ends it should the pool be full.
+	 * @param deflater The deflater to release.
+	 */
+	private void releaseDeflater(Deflater deflater) {
+		deflater.reset();
+		synchronized (deflaters) {
+			if (deflaterCount < deflaters.length) {
+				deflaters[deflaterCount++] = deflater;
+				return;
+			}
+		}
+		deflater.end();
+	}
+
+	/**
+	 * Acquires an inflater from the pool.
+	 * @return A pooled inflater, or a new one if the pool is empty.
+	 */
+	private Inflater acquireInflater() {
+		synchronized (inflaters) {
+			if (inflaterCount > 0) {
+				Inflater inflater = inflaters[--inflaterCount];
+				inflaters[inflaterCount] = null;
+				return inflater;
+			}
+		}
+		return new Inflater();
+	}
+
+	/**
+	 * Releases an inflater back into the pool, or ends it should the pool be full.
+	 * @param inflater The inflater to release.
+	 */
+	private void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		synchronized (inflaters) {
+			if (inflaterCount < inflaters.length) {
+				inflaters[inflaterCount++] = inflater;
+				return;
+			}
+		}
+		inflater.end();
+	}
+
+}
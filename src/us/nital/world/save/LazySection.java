@@ -0,0 +1,139 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import us.nital.net.io.InBuffer;
+import us.nital.net.io.OutBuffer;
+
+/**
+ * A section of a save which is only decoded once it is first accessed,
+ * for large parts of a save (such as a bank) which are not needed by
+ * every login.
+ * 
+ * <p>Should the section not have been accessed by the time it is saved again
+ * it's raw data is written back as it was read, without being decoded or
+ * encoded at all.</p>
+ * 
+ * @author Thomas Nappo
+ * @param <T> The type of the section's decoded value.
+ */
+public abstract class LazySection<T> {
+
+	/**
+	 * The section's tag.
+	 */
+	private final int tag;
+
+	/**
+	 * The section's raw data, should it not have been decoded yet.
+	 */
+	private ChannelBuffer raw;
+
+	/**
+	 * The section's decoded value, or <code>null</code> should it not
+	 * have been decoded yet.
+	 */
+	private T value;
+
+	/**
+	 * Constructs a new lazy section.
+	 * @param tag The section's tag.
+	 */
+	protected LazySection(int tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * Decodes the section's value.
+	 * @param in The buffer which reads the section.
+	 * @return The decoded value.
+	 */
+	protected abstract T decode(InBuffer in);
+
+	/**
+	 * Encodes the section's value.
+	 * @param value The value to encode.
+	 * @param out The buffer to encode the value to.
+	 */
+	protected abstract void encode(T value, OutBuffer out);
+
+	/**
+	 * Creates the value of a section which the save did not have.
+	 * @return The new value.
+	 */
+	protected abstract T create();
+
+	/**
+	 * Gets the section's {@link #tag}.
+	 * @return The section's tag.
+	 */
+	public int getTag() {
+		return tag;
+	}
+
+	/**
+	 * Loads the section from a save. It's data is only sliced, and is
+	 * decoded upon the first call to {@link #get}.
+	 * @param reader The reader of the save.
+	 */
+	public synchronized void load(SaveReader reader) {
+		this.raw = reader.getSections().get(tag);
+		this.value = null;
+	}
+
+	/**
+	 * Checks whether or not the section has been decoded.
+	 * @return <code>true</code> if the section's value exists.
+	 */
+	public synchronized boolean isDecoded() {
+		return value != null;
+	}
+
+	/**
+	 * Gets the section's value, decoding it should this be the first access.
+	 * @return The section's value.
+	 */
+	public synchronized T get() {
+		if (value == null) {
+			value = raw == null ? create() : decode(new InBuffer(raw.duplicate()));
+			raw = null;
+		}
+		return value;
+	}
+
+	/**
+	 * Saves the section. Should it not have been decoded it's raw data is
+	 * written back as it was read.
+	 * @param writer The writer of the save.
+	 */
+	public synchronized void save(SaveWriter writer) {
+		if (value != null) {
+			OutBuffer out = writer.section();
+			encode(value, out);
+			writer.write(tag, out);
+		} else if (raw != null) {
+			writer.write(tag, raw);
+		}
+	}
+
+}
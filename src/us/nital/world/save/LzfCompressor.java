@@ -0,0 +1,229 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import java.io.IOException;
+
+/**
+ * A compressor which uses an LZF-style algorithm. It compresses less than
+ * deflate, but only looks for repeated sequences through a hash table and
+ * never encodes any bits, so it is several times faster.
+ * 
+ * <p>The compressed data is a series of runs. A control byte below
+ * <tt>32</tt> is followed by that many bytes plus one which are copied as
+ * they are. Otherwise the control byte's top three bits hold the length of a
+ * repeated sequence (with a byte following should they all be set), and it's
+ * low five bits along with the next byte hold how far back the sequence
+ * begins, up to <tt>8192</tt> bytes.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class LzfCompressor extends Compressor {
+
+	/**
+	 * The compressor's identifier.
+	 */
+	public static final int ID = 2;
+
+	/**
+	 * The number of bits of a hash table index.
+	 */
+	private static final int HASH_BITS = 13;
+
+	/**
+	 * The maximum number of bytes a repeated sequence can begin back.
+	 */
+	private static final int MAXIMUM_OFFSET = 1 << 13;
+
+	/**
+	 * The maximum length of a run of bytes which are copied as they are.
+	 */
+	private static final int MAXIMUM_LITERALS = 32;
+
+	/**
+	 * The maximum length of a repeated sequence.
+	 */
+	private static final int MAXIMUM_LENGTH = 7 + 255 + 2;
+
+	/**
+	 * The hash tables of each thread. Tables are not cleared between uses:
+	 * any position a table holds is checked against the data before it is
+	 * used, so a stale position can only cost a missed sequence.
+	 */
+	private static final ThreadLocal<int[]> TABLE = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1 << HASH_BITS];
+		}
+	};
+
+	/**
+	 * Constructs a new LZF compressor.
+	 */
+	public LzfCompressor() {
+		super(ID);
+	}
+
+	/**
+	 * A repeated sequence of at most {@link #MAXIMUM_LENGTH} bytes takes
+	 * up three bytes at least.
+	 */
+	@Override
+	public int getMaximumRatio() {
+		return (MAXIMUM_LENGTH + 2) / 3;
+	}
+
+	@Override
+	public byte[] compress(byte[] src, int offset, int length) {
+		int[] table = TABLE.get();
+
+		/*
+		 * Runs of bytes which are copied as they are take one extra byte
+		 * per run, which bounds the size of the output.
+		 */
+		byte[] dst = new byte[length + length / MAXIMUM_LITERALS + 1];
+		int end = offset + length;
+		int ip = offset;
+		int op = 1;
+		int literals = 0;
+		int control = 0;
+
+		while (ip < end - 2) {
+			int hash = hash(src, ip);
+			int ref = table[hash];
+			table[hash] = ip;
+			int distance = ip - ref - 1;
+			if (ref >= offset && ref < ip && distance < MAXIMUM_OFFSET
+					&& src[ref] == src[ip] && src[ref + 1] == src[ip + 1] && src[ref + 2] == src[ip + 2]) {
+				/*
+				 * A repeated sequence was found, so it's length is found
+				 * and the current run of copied bytes is closed.
+				 */
+				int maximum = Math.min(end - ip, MAXIMUM_LENGTH);
+				int len = 3;
+				while (len < maximum && src[ref + len] == src[ip + len]) {
+					len++;
+				}
+				if (literals > 0) {
+					dst[control] = (byte) (literals - 1);
+				} else {
+					op--;
+				}
+				literals = 0;
+
+				int encoded = len - 2;
+				if (encoded < 7) {
+					dst[op++] = (byte) ((distance >> 8) + (encoded << 5));
+				} else {
+					dst[op++] = (byte) ((distance >> 8) + (7 << 5));
+					dst[op++] = (byte) (encoded - 7);
+				}
+				dst[op++] = (byte) distance;
+				ip += len;
+				control = op++;
+			} else {
+				dst[op++] = src[ip++];
+				if (++literals == MAXIMUM_LITERALS) {
+					dst[control] = (byte) (MAXIMUM_LITERALS - 1);
+					literals = 0;
+					control = op++;
+				}
+			}
+		}
+
+		/*
+		 * The last bytes are too few to begin a sequence, and are copied.
+		 */
+		while (ip < end) {
+			dst[op++] = src[ip++];
+			if (++literals == MAXIMUM_LITERALS) {
+				dst[control] = (byte) (MAXIMUM_LITERALS - 1);
+				literals = 0;
+				control = op++;
+			}
+		}
+		if (literals > 0) {
+			dst[control] = (byte) (literals - 1);
+		} else {
+			op--;
+		}
+
+		if (op >= length) {
+			return null;
+		}
+		byte[] compressed = new byte[op];
+		System.arraycopy(dst, 0, compressed, 0, op);
+		return compressed;
+	}
+
+	@Override
+	public void decompress(byte[] src, int offset, int length, byte[] dst) throws IOException {
+		int ip = offset;
+		int end = offset + length;
+		int op = 0;
+		try {
+			while (ip < end) {
+				int control = src[ip++] & 0xFF;
+				if (control < MAXIMUM_LITERALS) {
+					int count = control + 1;
+					System.arraycopy(src, ip, dst, op, count);
+					ip += count;
+					op += count;
+				} else {
+					int len = control >>> 5;
+					if (len == 7) {
+						len += src[ip++] & 0xFF;
+					}
+					len += 2;
+					int ref = op - ((control & 0x1F) << 8) - (src[ip++] & 0xFF) - 1;
+					if (ref < 0) {
+						throw new IOException("Compressed data is malformed.");
+					}
+
+					/*
+					 * The sequence may overlap the bytes it is copied to,
+					 * so it is copied a byte at a time.
+					 */
+					for (int i = 0; i < len; i++) {
+						dst[op++] = dst[ref++];
+					}
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Compressed data is malformed.");
+		}
+		if (op != dst.length) {
+			throw new IOException("Compressed data is malformed.");
+		}
+	}
+
+	/**
+	 * Hashes the three bytes at a position.
+	 * @param src The array which holds the bytes.
+	 * @param index The position of the bytes.
+	 * @return The index of the bytes within the hash table.
+	 */
+	private static int hash(byte[] src, int index) {
+		int v = (src[index] & 0xFF) << 16 | (src[index + 1] & 0xFF) << 8 | (src[index + 2] & 0xFF);
+		return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Holds the constants of the tagged save format.
+ * 
+ * <p>A save begins with the {@link #MAGIC} byte and the format's version as
+ * a variable-length int. It is followed by sections, each of which is it's
+ * tag and length as variable-length ints followed by it's data, and ends
+ * with the {@link #END} tag. Readers skip sections with tags they do not
+ * know, so sections can be added without breaking older saves, and large
+ * sections can be left undecoded until they are needed.</p>
+ * 
+ * <p>Saves which were written before the format begin with the player's
+ * username instead, which can never begin with the magic byte.</p>
+ * 
+ * @author Thomas Nappo
+ */
+public final class SaveFormat {
+
+	/**
+	 * The first byte of every tagged save.
+	 */
+	public static final int MAGIC = 0xFF;
+
+	/**
+	 * The current version of the format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The tag which ends a save.
+	 */
+	public static final int END = 0;
+
+	/**
+	 * Checks whether or not a save is of the tagged format, without
+	 * reading the buffer.
+	 * @param buf The buffer which holds the save.
+	 * @return <code>true</code> if the save begins with the magic byte.
+	 */
+	public static boolean isTagged(ChannelBuffer buf) {
+		return buf.readable() && buf.getUnsignedByte(buf.readerIndex()) == MAGIC;
+	}
+
+}
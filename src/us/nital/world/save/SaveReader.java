@@ -0,0 +1,110 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import us.nital.net.io.InBuffer;
+
+/**
+ * Reads a save of the tagged format.
+ * 
+ * <p>Only the tags and lengths of the sections are read upon construction.
+ * Each section's data is kept as a slice of the save, which is decoded by
+ * whoever asks for it, so that sections which are never asked for are never
+ * decoded or copied.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link SaveFormat}
+ */
+public final class SaveReader {
+
+	/**
+	 * The version of the format the save was written with.
+	 */
+	private final int version;
+
+	/**
+	 * The data of each section by it's tag, in the order they were written.
+	 */
+	private final Map<Integer, ChannelBuffer> sections = new LinkedHashMap<Integer, ChannelBuffer>();
+
+	/**
+	 * Constructs a new save reader, reading the save's header and the
+	 * locations of it's sections.
+	 * @param buf The buffer which holds the save.
+	 * @throws IllegalArgumentException should the save not be of the tagged
+	 * format, or be of a newer version.
+	 */
+	public SaveReader(ChannelBuffer buf) {
+		if (!SaveFormat.isTagged(buf)) {
+			throw new IllegalArgumentException("Save is not of the tagged format.");
+		}
+		InBuffer in = new InBuffer(buf);
+		in.readUnsignedByte();
+		this.version = in.readVarInt();
+		if (version > SaveFormat.VERSION) {
+			throw new IllegalArgumentException("Save is of a newer version: " + version);
+		}
+
+		/*
+		 * Each section is sliced out of the save without being decoded.
+		 */
+		int tag;
+		while (in.readable() && (tag = in.readVarInt()) != SaveFormat.END) {
+			int length = in.readVarInt();
+			sections.put(tag, buf.readSlice(length));
+		}
+	}
+
+	/**
+	 * Gets the reader's {@link #version}.
+	 * @return The version of the format the save was written with.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets a section to decode.
+	 * @param tag The section's tag.
+	 * @return A buffer which reads the section, or <code>null</code> should
+	 * the save not have the section.
+	 */
+	public InBuffer getSection(int tag) {
+		ChannelBuffer data = sections.get(tag);
+		return data == null ? null : new InBuffer(data.duplicate());
+	}
+
+	/**
+	 * Gets the raw data of every section, which can be written back
+	 * by a {@link SaveWriter} without being decoded.
+	 * @return The data of each section by it's tag.
+	 */
+	public Map<Integer, ChannelBuffer> getSections() {
+		return Collections.unmodifiableMap(sections);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Nital is an effort to provide a well documented, powerful, scalable, and robust 
+ * RuneScape server framework delivered open-source to all users.
+ *
+ *  Copyright (C) 2011 Nital Software
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package us.nital.world.save;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import us.nital.net.io.OutBuffer;
+
+/**
+ * Writes a save of the tagged format.
+ * 
+ * <p>Each section is built within an {@link OutBuffer} of it's own, which is
+ * then written along with it's tag and length. Sections which were never
+ * decoded can be written back as the raw bytes they were read as.</p>
+ * 
+ * @author Thomas Nappo
+ * @see {@link SaveFormat}
+ */
+public final class SaveWriter {
+
+	/**
+	 * The buffer which the save is written to.
+	 */
+	private final OutBuffer out;
+
+	/**
+	 * Constructs a new save writer, writing the save's header.
+	 * @param out The buffer which the save is written to.
+	 */
+	public SaveWriter(OutBuffer out) {
+		this.out = out;
+		out.write(SaveFormat.MAGIC);
+		out.writeVarInt(SaveFormat.VERSION);
+	}
+
+	/**
+	 * Creates a buffer to build a section within.
+	 * @return An empty buffer.
+	 */
+	public OutBuffer section() {
+		return new OutBuffer(ChannelBuffers.dynamicBuffer(32));
+	}
+
+	/**
+	 * Writes a section which was built.
+	 * @param tag The section's tag.
+	 * @param section The buffer which the section was built within.
+	 * @return This writer's instance, for chaining.
+	 */
+	public SaveWriter write(int tag, OutBuffer section) {
+		return write(tag, section.getInternalBuffer());
+	}
+
+	/**
+	 * Writes the raw bytes of a section.
+	 * @param tag The section's tag.
+	 * @param data The section's data, which is not read.
+	 * @return This writer's instance, for chaining.
+	 */
+	public SaveWriter write(int tag, ChannelBuffer data) {
+		if (tag == SaveFormat.END) {
+			throw new IllegalArgumentException("Tag is reserved: " + tag);
+		}
+		out.writeVarInt(tag);
+		out.writeVarInt(data.readableBytes());
+		out.getInternalBuffer().writeBytes(data, data.readerIndex(), data.readableBytes());
+		return this;
+	}
+
+	/**
+	 * Ends the save.
+	 */
+	public void finish() {
+		out.writeVarInt(SaveFormat.END);
+	}
+
+}